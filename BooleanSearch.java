@@ -2,139 +2,336 @@ import java.util.*;
 
 public class BooleanSearch {
 
-    // function that returns the list of documents in which a given word appears
-    private static Set<String> searchForWord(TreeMap<String, HashMap<String, Integer>> indirectIndex, String word)
+    // what the search needs from an indirect index
+    private interface WordIndex
     {
-        if (!indirectIndex.containsKey(word))
+        DocumentBitmap documents(String word); // the set of documents (ids) in which the word appears
+        int documentFrequency(String word);
+        DocumentBitmap intersection(List<String> words); // the documents in which all the words appear
+        DocumentBitmap matchPositions(QueryNode node, DocumentBitmap candidates); // the candidates in which the phrase / NEAR is found
+    }
+
+    // the message of the phrase and NEAR searches over an index without positions
+    private static final String NO_POSITIONS = "Phrase and NEAR searches need the positions of the words: create the direct index "
+            + "with positions, then the indirect index, and load its binary form";
+
+    // the indirect index loaded in memory
+    private static class MemoryWordIndex implements WordIndex
+    {
+        private final TreeMap<String, HashMap<Integer, Integer>> indirectIndex;
+
+        MemoryWordIndex(TreeMap<String, HashMap<Integer, Integer>> indirectIndex)
         {
-            return null;
+            this.indirectIndex = indirectIndex;
+        }
+
+        // the documents of the word, sorted
+        private int[] sortedDocuments(String word)
+        {
+            if (!indirectIndex.containsKey(word))
+            {
+                return new int[0]; // the word doesn't appear in any document
+            }
+            int[] documents = new int[indirectIndex.get(word).size()];
+            int i = 0;
+            for (int document : indirectIndex.get(word).keySet())
+            {
+                documents[i++] = document;
+            }
+            Arrays.sort(documents);
+            return documents;
+        }
+
+        public DocumentBitmap documents(String word)
+        {
+            int[] documents = sortedDocuments(word);
+            return DocumentBitmap.of(documents, documents.length);
+        }
+
+        public int documentFrequency(String word)
+        {
+            return indirectIndex.containsKey(word) ? indirectIndex.get(word).size() : 0;
+        }
+
+        public DocumentBitmap intersection(List<String> words)
+        {
+            int[][] lists = new int[words.size()][];
+            for (int i = 0; i < lists.length; ++i)
+            {
+                lists[i] = sortedDocuments(words.get(i));
+            }
+            return Intersection.intersect(lists);
+        }
+
+        public DocumentBitmap matchPositions(QueryNode node, DocumentBitmap candidates)
+        {
+            throw new IllegalArgumentException(NO_POSITIONS);
         }
-        return indirectIndex.get(word).keySet();
     }
 
-    // function that applies the given operator over 2 operands
-    private static HashSet<String> applyOperator(Set<String> operand1, Set<String> operand2, String operator)
+    // the binary index, mapped in memory: only the postings of the words in the query are decoded
+    private static class MappedWordIndex implements WordIndex
     {
-        HashSet<String> result = new HashSet<>();
-        Set<String> firstSet;
-        Set<String> secondSet;
-        boolean firstSetIsSmaller;
+        private final PostingsReader index;
 
-        switch (operator.toLowerCase())
+        MappedWordIndex(PostingsReader index)
         {
-            case "and":
-                // for efficiency, the set with the smaller cardinality is traversed
-                firstSetIsSmaller = (operand1.size() < operand2.size());
-                firstSet = (firstSetIsSmaller) ? operand1 : operand2;
-                secondSet = (firstSetIsSmaller) ? operand2 : operand1;
-                for (String doc : firstSet) // iteram in prima multime
+            this.index = index;
+        }
+
+        public DocumentBitmap documents(String word)
+        {
+            PostingsReader.Postings postings = index.getPostings(word);
+            if (postings == null)
+            {
+                return new DocumentBitmap(); // the word doesn't appear in any document
+            }
+            return DocumentBitmap.of(postings.documents, postings.size());
+        }
+
+        public int documentFrequency(String word)
+        {
+            return index.getDocumentFrequency(word);
+        }
+
+        public DocumentBitmap intersection(List<String> words)
+        {
+            PostingsIterator[] iterators = new PostingsIterator[words.size()];
+            for (int i = 0; i < iterators.length; ++i)
+            {
+                iterators[i] = index.iterator(words.get(i));
+                if (iterators[i] == null) // the word doesn't appear in any document
                 {
-                    if (secondSet.contains(doc))  // if the current document also exists in the second set
-                    {
-                        result.add(doc); // add to the result
-                    }
+                    return new DocumentBitmap();
                 }
-                return result;
-            case "or":
-                // for efficiency, the set with the larger cardinality is cloned
-                firstSetIsSmaller = (operand1.size() < operand2.size());
-                firstSet = (firstSetIsSmaller) ? operand2 : operand1;
-                secondSet = (firstSetIsSmaller) ? operand1 : operand2;
-                result.addAll(firstSet);
-                for (String doc : secondSet) // we iterate in the second set, with the smaller cardinal
+            }
+            return Intersection.intersect(iterators);
+        }
+
+        public DocumentBitmap matchPositions(QueryNode node, DocumentBitmap candidates)
+        {
+            if (!index.hasPositions())
+            {
+                throw new IllegalArgumentException(NO_POSITIONS);
+            }
+
+            // one cursor for each distinct word (a word can appear more than once in a phrase)
+            HashMap<String, PositionsCursor> cursors = new HashMap<>();
+            for (String word : node.words)
+            {
+                if (!cursors.containsKey(word))
                 {
-                    if (result.contains(doc)) // if the current document does not exist in the first set
-                    {
-                        result.add(doc); // add to the result
-                    }
+                    cursors.put(word, index.positions(word));
                 }
-                return result;
-            case "not":
-                for (String doc : operand1)  // we iterate through the first set
+            }
+
+            // the candidates are visited in increasing order, so each cursor goes through the positions only once
+            int[] documents = candidates.toArray();
+            int[] matches = new int[documents.length];
+            int numberOfMatches = 0;
+            int[][] positions = new int[node.words.size()][];
+            for (int document : documents)
+            {
+                HashMap<String, int[]> documentPositions = new HashMap<>();
+                for (Map.Entry<String, PositionsCursor> cursor : cursors.entrySet())
                 {
-                    if (!operand2.contains(doc)) // if the current document does not exist in the second set
-                    {
-                        result.add(doc); // add to the result
-                    }
+                    documentPositions.put(cursor.getKey(), cursor.getValue().positions(document));
                 }
-                return result;
+                for (int w = 0; w < positions.length; ++w)
+                {
+                    positions[w] = documentPositions.get(node.words.get(w));
+                }
+
+                boolean match = (node.type == QueryNode.Type.PHRASE) ? containsPhrase(positions)
+                        : withinDistance(positions[0], positions[1], node.distance);
+                if (match)
+                {
+                    matches[numberOfMatches++] = document;
+                }
+            }
+            return DocumentBitmap.of(matches, numberOfMatches);
+        }
+    }
+
+    // true if the words appear one after another: a position p of the first word, p + 1 of the second one, and so on
+    private static boolean containsPhrase(int[][] positions)
+    {
+        for (int start : positions[0])
+        {
+            int w = 1;
+            while (w < positions.length && Arrays.binarySearch(positions[w], start + w) >= 0)
+            {
+                ++w;
+            }
+            if (w == positions.length)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // true if a position of the first word and one of the second word are at most "distance" words apart
+    // (both lists are sorted, so they are merged: only neighbouring positions need to be compared)
+    private static boolean withinDistance(int[] positions1, int[] positions2, int distance)
+    {
+        int i = 0, j = 0;
+        while (i < positions1.length && j < positions2.length)
+        {
+            if (Math.abs(positions1[i] - positions2[j]) <= distance)
+            {
+                return true;
+            }
+            if (positions1[i] < positions2[j])
+            {
+                ++i;
+            }
+            else
+            {
+                ++j;
+            }
+        }
+        return false;
+    }
+
+    // function that applies the given operator over 2 operands
+    // the sets are compressed bitmaps, so the operators work on 64 documents at a time instead of one document per hash lookup
+    private static DocumentBitmap applyOperator(DocumentBitmap operand1, DocumentBitmap operand2, String operator)
+    {
+        switch (operator.toLowerCase())
+        {
+            case "and":
+                return operand1.and(operand2);
+            case "or":
+                return operand1.or(operand2);
+            case "not": // the documents of the first set that don't exist in the second set
+                return operand1.andNot(operand2);
             default:
                 return null;
         }
     }
 
-    // function that performs the boolean search according to the query given by the user
-    public static Set<String> Search(TreeMap<String, HashMap<String, Integer>> indirectIndex, String query)
+    // function that performs the boolean search according to the query given by the user, on the index loaded in memory
+    public static DocumentBitmap Search(TreeMap<String, HashMap<Integer, Integer>> indirectIndex, String query, int numberOfDocuments)
+    {
+        return Search(indirectIndex, query, numberOfDocuments, null);
+    }
+
+    // the same, also appending the plan of the query to "plan" (if not null), for display
+    public static DocumentBitmap Search(TreeMap<String, HashMap<Integer, Integer>> indirectIndex, String query, int numberOfDocuments,
+                                        StringBuilder plan)
+    {
+        return Search(new MemoryWordIndex(indirectIndex), query, numberOfDocuments, plan);
+    }
+
+    // function that performs the boolean search on the memory mapped index: only the words of the query are read
+    public static DocumentBitmap Search(PostingsReader index, String query)
     {
-        // divide the query into words, by spaces
-        String[] splitQuery = query.split("\\s+");
+        return Search(index, query, null);
+    }
 
-        // create two stacks, one for operators and one for operands
-        Stack<String> operators = new Stack<>();
-        Stack<String> operands = new Stack<>();
+    // the same, also appending the plan of the query to "plan" (if not null), for display
+    public static DocumentBitmap Search(PostingsReader index, String query, StringBuilder plan)
+    {
+        return Search(new MappedWordIndex(index), query, index.getNumberOfDocuments(), plan);
+    }
 
-        // we store operators and operands in stacks
-        // we go from tail to head because we will parse the expression from right to left. top of stack = first operand etc.
-        int i = splitQuery.length - 1;
-        while (i >= 0)
+    // the query is parsed into a tree (with the precedence NOT > AND > OR and parentheses), the tree is reordered
+    // by the planner using the number of documents of each word, and then it is evaluated
+    private static DocumentBitmap Search(WordIndex index, String query, int numberOfDocuments, StringBuilder planText)
+    {
+        QueryNode queryTree = QueryParser.parse(query);
+        if (queryTree == null) // only stopwords
         {
-            // the natural order is: operand OPERATOR operand OPERATOR ...
-            String word = splitQuery[i];
+            return null;
+        }
 
-            // first, we check if it is an exception
-            if (ExceptionList.exceptions.contains(word))
-            {
-                // we add it as it is
-                operands.push(word); --i;
+        QueryNode plan = QueryPlanner.plan(queryTree, index::documentFrequency, numberOfDocuments);
+        if (planText != null)
+        {
+            planText.append(plan);
+        }
+        return evaluate(plan, index, numberOfDocuments);
+    }
+
+    // a phrase or NEAR: first the (cheap) intersection of the documents of its words, restricted to the given documents
+    // (if any); then the positions of the words are checked only in the documents left
+    private static DocumentBitmap evaluatePositional(QueryNode node, WordIndex index, DocumentBitmap restriction)
+    {
+        DocumentBitmap candidates = index.intersection(new ArrayList<>(new LinkedHashSet<>(node.words)));
+        if (restriction != null)
+        {
+            candidates = applyOperator(candidates, restriction, "and");
+        }
+        return index.matchPositions(node, candidates);
+    }
 
-                if (i >= 0)
+    // evaluates a planned query tree
+    private static DocumentBitmap evaluate(QueryNode node, WordIndex index, int numberOfDocuments)
+    {
+        switch (node.type)
+        {
+            case WORD:
+                return index.documents(node.word);
+            case PHRASE:
+            case NEAR:
+                return evaluatePositional(node, index, null);
+            case NOT: // a NOT which is not inside an AND: all the documents, except those of the operand
+                return DocumentBitmap.range(numberOfDocuments).andNot(evaluate(node.children.get(0), index, numberOfDocuments));
+            case OR:
+            {
+                DocumentBitmap result = evaluate(node.children.get(0), index, numberOfDocuments);
+                for (int i = 1; i < node.children.size(); ++i)
                 {
-                    operators.push(splitQuery[i--]);
+                    result = applyOperator(result, evaluate(node.children.get(i), index, numberOfDocuments), "or");
                 }
+                return result;
             }
-            // then if it is a stopword
-            else if (StopWordList.stopwords.contains(word))
+            default: // AND: the operands come from the smallest one, the negated ones at the end
             {
-                // ignore both the word and its associated operator
-                i -= 2;
-            }
-            else 
-            { // dictionary word
-                // the Porter algorithm is used for stemming
-                PorterStemmer stemmer = new PorterStemmer();
-                stemmer.add(word.toCharArray(), word.length());
-                stemmer.stem();
-                word = stemmer.toString();
-
-                operands.push(word); --i;
-
-                if (i >= 0)
+                // the words are intersected all at once, advancing through their postings in lockstep
+                List<String> words = new ArrayList<>();
+                for (QueryNode child : node.children)
                 {
-                    operators.push(splitQuery[i--]);
+                    if (child.type == QueryNode.Type.WORD)
+                    {
+                        words.add(child.word);
+                    }
                 }
-            }
-        }
-        // remove the first operand and consider it as "the first search result"
-        Set<String> resultSet = searchForWord(indirectIndex, operands.pop());
 
-        try {
-            while (!operands.empty() && !operators.empty())  // until we empty both stacks
-            {
-                // output one operator and one operand
-                String operand = operands.pop();
-                String operator = operators.pop();
-                
-                // create the set of documents in which the current operand appears
-                Set<String> currentSet = searchForWord(indirectIndex, operand);
-
-                // apply the operation and store the result
-                resultSet = applyOperator(resultSet, currentSet, operator);
+                DocumentBitmap result = (words.size() > 1) ? index.intersection(words) : null;
+                for (QueryNode child : node.children)
+                {
+                    if (result != null && result.isEmpty()) // nothing can be added back by an AND
+                    {
+                        break;
+                    }
+                    if (words.size() > 1 && child.type == QueryNode.Type.WORD) // already intersected
+                    {
+                        continue;
+                    }
+
+                    if (child.type == QueryNode.Type.NOT)
+                    {
+                        if (result == null) // there is no positive operand
+                        {
+                            result = DocumentBitmap.range(numberOfDocuments);
+                        }
+                        result = applyOperator(result, evaluate(child.children.get(0), index, numberOfDocuments), "not");
+                    }
+                    else if (child.isPositional() && result != null)
+                    {
+                        // the positions are only checked in the documents still in the result
+                        result = evaluatePositional(child, index, result);
+                    }
+                    else
+                    {
+                        DocumentBitmap childResult = evaluate(child, index, numberOfDocuments);
+                        result = (result == null) ? childResult : applyOperator(result, childResult, "and");
+                    }
+                }
+                return result;
             }
-        } catch (NullPointerException e)
-        {
-            return null;
         }
-
-        return resultSet;
     }
 }
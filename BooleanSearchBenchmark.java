@@ -0,0 +1,137 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeMap;
+
+// compares the evaluation of Boolean queries planned by QueryPlanner
+// (BooleanSearch.Search) with their evaluation from left to right, in the order
+// in which they are written: one operator at a time, on the whole sets of
+// documents of the operands, a NOT being the complement of its operand.
+// The index is a binary index (PostingsWriter / PostingsReader) of generated
+// documents, with words from very frequent (half of the documents) to rare;
+// the queries are written in a bad order on purpose (the frequent words first,
+// the NOT first), as a user would write them. Both evaluations give the same
+// documents (checked); the time of each query is the best of several rounds.
+// Usage: BooleanSearchBenchmark [documents] [rounds]
+class BooleanSearchBenchmark {
+    // the words of the generated documents and the share of the documents in which each one appears
+    private static final String[] WORDS = { "ocean", "river", "valley", "glacier", "tundra", "fjord" };
+    private static final double[] SHARES = { 0.5, 0.3, 0.1, 0.02, 0.005, 0.0005 };
+
+    private static final String[] QUERIES = {
+            "ocean AND river AND fjord",
+            "ocean AND river AND valley AND glacier AND tundra AND fjord",
+            "NOT ocean AND tundra",
+            "ocean AND NOT river AND glacier",
+            "(ocean OR river) AND (valley OR fjord) AND tundra",
+            "fjord AND ocean",
+    };
+
+    // writes the binary index of the generated documents
+    private static void writeIndex(File file, int numberOfDocuments) throws IOException
+    {
+        Random random = new Random(42);
+        TreeMap<String, Double> shares = new TreeMap<>(); // the words must be added in increasing order
+        for (int w = 0; w < WORDS.length; ++w)
+        {
+            shares.put(StemCache.shared.stem(WORDS[w]), SHARES[w]); // the words of the queries are stemmed
+        }
+        PostingsWriter writer = new PostingsWriter(file.getPath(), numberOfDocuments);
+        try {
+            int[] documents = new int[numberOfDocuments];
+            int[] counts = new int[numberOfDocuments];
+            Arrays.fill(counts, 1);
+            for (String word : shares.keySet())
+            {
+                int length = 0;
+                for (int document = 0; document < numberOfDocuments; ++document)
+                {
+                    if (random.nextDouble() < shares.get(word)) documents[length++] = document;
+                }
+                writer.addWord(word, documents, counts, length);
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    // evaluates the parsed query from left to right
+    private static DocumentBitmap evaluateLeftToRight(QueryNode node, PostingsReader index)
+    {
+        switch (node.type)
+        {
+            case WORD:
+            {
+                PostingsReader.Postings postings = index.getPostings(node.word);
+                return (postings != null) ? DocumentBitmap.of(postings.documents, postings.size()) : new DocumentBitmap();
+            }
+            case NOT:
+                return DocumentBitmap.range(index.getNumberOfDocuments()).andNot(evaluateLeftToRight(node.children.get(0), index));
+            case OR:
+            {
+                DocumentBitmap result = evaluateLeftToRight(node.children.get(0), index);
+                for (int i = 1; i < node.children.size(); ++i)
+                {
+                    result = result.or(evaluateLeftToRight(node.children.get(i), index));
+                }
+                return result;
+            }
+            case AND:
+            {
+                DocumentBitmap result = evaluateLeftToRight(node.children.get(0), index);
+                for (int i = 1; i < node.children.size(); ++i)
+                {
+                    result = result.and(evaluateLeftToRight(node.children.get(i), index));
+                }
+                return result;
+            }
+            default:
+                throw new IllegalArgumentException("The benchmark has no phrases: " + node);
+        }
+    }
+
+    // the best time of the evaluation, in microseconds
+    private static double bestMicros(Runnable evaluation, int rounds)
+    {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 2 * rounds; ++round) // the first half warms up
+        {
+            long start = System.nanoTime();
+            evaluation.run();
+            if (round >= rounds) best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e3;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int numberOfDocuments = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+        File file = File.createTempFile("boolean", ".bin");
+        try {
+            writeIndex(file, numberOfDocuments);
+            PostingsReader index = PostingsReader.map(file.getPath());
+            System.out.println(numberOfDocuments + " documents");
+            for (String query : QUERIES)
+            {
+                StringBuilder plan = new StringBuilder();
+                DocumentBitmap planned = BooleanSearch.Search(index, query, plan);
+                QueryNode tree = QueryParser.parse(query);
+                if (!Arrays.equals(planned.toArray(), evaluateLeftToRight(tree, index).toArray()))
+                {
+                    System.out.println("Different results for " + query);
+                    System.exit(1);
+                }
+
+                double leftToRight = bestMicros(() -> evaluateLeftToRight(QueryParser.parse(query), index), rounds);
+                double withPlan = bestMicros(() -> BooleanSearch.Search(index, query), rounds);
+                System.out.printf("%s%n    plan: %s%n    %d documents, left to right %.0f us, planned %.0f us (x%.1f)%n",
+                        query, plan, planned.cardinality(), leftToRight, withPlan, leftToRight / withPlan);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+}
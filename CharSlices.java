@@ -0,0 +1,37 @@
+// the hashing and comparison of words given as char[] slices, shared by the hash tables of words
+// (TermCounter, TermFilter, StemCache), so a slice and a String with the same characters always match
+class CharSlices {
+    // the hash of buffer[offset..offset+length), equal to the hashCode() of the same word as a String
+    static int hash(char[] buffer, int offset, int length)
+    {
+        int hash = 0;
+        for (int c = offset; c < offset + length; c++)
+        {
+            hash = 31 * hash + buffer[c];
+        }
+        return hash;
+    }
+
+    // mixes the high bits of the hash into the low bits, which choose the slot of a table
+    static int spread(int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+
+    // true if the word has the same characters as buffer[offset..offset+length)
+    static boolean equals(String word, char[] buffer, int offset, int length)
+    {
+        if (word.length() != length)
+        {
+            return false;
+        }
+        for (int c = 0; c < length; c++)
+        {
+            if (word.charAt(c) != buffer[offset + c])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -2,57 +2,56 @@ import com.sun.org.apache.xpath.internal.operations.Bool;
 import javafx.beans.binding.BooleanExpression;
 import org.omg.PortableInterceptor.SYSTEM_EXCEPTION;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 
 public class Crawler {
     static long startTime, stopTime, elapsedTime; 
+    static DocumentTable documentTable = null; // for translating the ids of the documents into paths
+    static final int VECTOR_SEARCH_RESULTS = 100; // the number of documents returned by the vector search
+    static final int RESULTS_PER_PAGE = 10;
 
-    static void printProgress(long startTime, long total, long current) 
+    // the table of documents, read from disk the first time it is needed
+    static DocumentTable getDocumentTable(WebsiteInfo websiteInfo) throws IOException
     {
-        long eta = current == 0 ? 0 :
-                (total - current) * (System.currentTimeMillis() - startTime) / current;
-
-        String etaHms = current == 0 ? "N/A" :
-                String.format("%02d:%02d:%02d", TimeUnit.MILLISECONDS.toHours(eta),
-                        TimeUnit.MILLISECONDS.toMinutes(eta) % TimeUnit.HOURS.toMinutes(1),
-                        TimeUnit.MILLISECONDS.toSeconds(eta) % TimeUnit.MINUTES.toSeconds(1));
-
-        StringBuilder string = new StringBuilder(140);
-        int percent = (int) (current * 100 / total);
-        string
-                .append('\r')
-                .append(String.join("", Collections.nCopies(percent == 0 ? 2 : 2 - (int) (Math.log10(percent)), " ")))
-                .append(String.format(" %d%% [", percent))
-                .append(String.join("", Collections.nCopies(percent, "=")))
-                .append('>')
-                .append(String.join("", Collections.nCopies(100 - percent, " ")))
-                .append(']')
-                .append(String.join("", Collections.nCopies(current == 0 ? (int) (Math.log10(total)) : (int) (Math.log10(total)) - (int) (Math.log10(current)), " ")))
-                .append(String.format(" %d/%d, Estimated time left: %s", current, total, etaHms));
-
-        System.out.print(string);
+        if (documentTable == null)
+        {
+            documentTable = DocumentTable.load(websiteInfo.getWebsiteFolder() + "documents.table");
+        }
+        return documentTable;
     }
 
-    
     public static void main(String[] args) throws IOException {
         System.out.print("Loading website... ");
         WebsiteInfo websiteInfo = new WebsiteInfo("./ietf.org/", "http://ietf.org/");
+
+        // the website can come with its own lists of stopwords and exceptions (one word per line)
+        if (new File(websiteInfo.getWebsiteFolder() + "stopwords.txt").exists())
+        {
+            StopWordList.load(websiteInfo.getWebsiteFolder() + "stopwords.txt");
+        }
+        if (new File(websiteInfo.getWebsiteFolder() + "exceptions.txt").exists())
+        {
+            ExceptionList.load(websiteInfo.getWebsiteFolder() + "exceptions.txt");
+        }
         System.out.println("OK\n");
 
-        HashMap<String, HashMap<String, Integer>> directIndex = null;
-        TreeMap<String, HashMap<String, Integer>> indirectIndex = null;
-        HashMap<String, TreeMap<String, Double>> associatedVectors = null;
+        HashMap<Integer, HashMap<String, Integer>> directIndex = null;
+        TreeMap<String, HashMap<Integer, Integer>> indirectIndex = null;
+        PostingsReader mappedIndex = null; // the binary indirect index, mapped in memory
+        HashMap<Integer, TreeMap<String, Double>> associatedVectors = null;
+        VectorStore vectorStore = null; // the vectors in columns, mapped in memory
 
         // for searches
         String query;
-        Set<String> booleanSearchResults;
-        SortedSet<HashMap.Entry<String, Double>> vectorSearchResults;
+        DocumentBitmap booleanSearchResults;
+        TopK vectorSearchResults;
         Scanner queryScanner = new Scanner(System.in);
 
         // the menu displayed to the user
         do {
+            System.out.println("0. Crawl the website over HTTP + direct index + indice \"tf\"");
             System.out.println("1. Create direct index + indice \"tf\"");
             System.out.println("2. Create indirect index + indice \"idf\"");
             System.out.println("3. Load indirect index in memory (for Boolean search)");
@@ -69,11 +68,42 @@ public class Crawler {
 
             switch (option)
             {
+                case 0:
+                    System.out.print("Maximum number of pages: ");
+                    int maxPages = reader.nextInt();
+                    System.out.print("Maximum number of pages fetched at the same time: ");
+                    LiveCrawler liveCrawler = new LiveCrawler(websiteInfo, Math.max(reader.nextInt(), 1)).setMaxPages(maxPages);
+                    System.out.print("Maximum number of requests per second to the website: ");
+                    int requestsPerSecond = Math.max(reader.nextInt(), 1);
+                    liveCrawler.setPoliteness(requestsPerSecond, Math.min(requestsPerSecond, 4));
+                    System.out.println("The website " + websiteInfo.getBaseUri() + " is being crawled, please wait... ");
+                    startTime = System.currentTimeMillis();
+                    try {
+                        directIndex = liveCrawler.crawl();
+                        documentTable = null; // the documents received new ids
+                    }
+                    catch (IOException e)
+                    {
+                        System.out.println("\nERROR: Unable to write the pages or the required files to disk, possibly due to restricted permissions.");
+                        break;
+                    }
+                    stopTime = System.currentTimeMillis();
+                    elapsedTime = stopTime - startTime;
+                    System.out.println("OK (" + (double)elapsedTime / 1000 + " seconds, " + liveCrawler.getPagesFetched() + " pages, "
+                            + String.format("%.1f", liveCrawler.getPagesPerSecond()) + " pages/second, "
+                            + String.format("%.1f", liveCrawler.getBytesPerSecond() / 1024) + " KB/second, "
+                            + liveCrawler.getErrors() + " errors, " + liveCrawler.getDisallowed() + " URLs disallowed by robots.txt, "
+                            + liveCrawler.getNotIndexed() + " pages with noindex)");
+                    break;
                 case 1:
+                    System.out.print("Record the positions of the words, for phrase and NEAR searches (y/n)? ");
+                    DirectIndex.recordPositions = reader.next().equalsIgnoreCase("y");
                     System.out.print("The direct index is being created, please wait... ");
                     startTime = System.currentTimeMillis();
                     try {
-                        directIndex = DirectIndex.directIndex(websiteInfo);
+                        StemCache.shared.resetStatistics();
+                        directIndex = DirectIndex.directIndex(websiteInfo, Runtime.getRuntime().availableProcessors());
+                        documentTable = null; // the documents received new ids
                     }
                     catch (IOException e)
                     {
@@ -82,28 +112,43 @@ public class Crawler {
                     }
                     stopTime = System.currentTimeMillis();
                     elapsedTime = stopTime - startTime;
-                    System.out.println("OK (" + (double)elapsedTime / 1000 + " seconds)");
+                    System.out.println("OK (" + (double)elapsedTime / 1000 + " seconds, "
+                            + Math.round(directIndex.size() * 1000.0 / Math.max(elapsedTime, 1)) + " documents/second, "
+                            + Math.round(StemCache.shared.getHitRate() * 100) + "% of the stems found in cache)");
                     break;
                 case 2:
                     System.out.print("The indirect index is being created, please wait... ");
                     startTime = System.currentTimeMillis();
                     try {
-                        indirectIndex = IndirectIndex.indirectIndex(websiteInfo);
+                        IndirectIndex.indirectIndex(websiteInfo);
                     }
                     catch (IOException e)
                     {
                         System.out.println("\nERROR: The direct index was not created, or the required files cannot be written to disk, possibly due to restricted permissions.");
                         break;
                     }
+                    // the index is built on disk, it must be loaded (option 3) for the Boolean search
+                    indirectIndex = null;
+                    mappedIndex = null;
                     stopTime = System.currentTimeMillis();
                     elapsedTime = stopTime - startTime;
-                    System.out.println("OK (" + (double)elapsedTime / 1000 + " seconds)");
+                    System.out.println("OK (" + (double)elapsedTime / 1000 + " seconds, peak heap used "
+                            + IndirectIndex.getPeakHeapUsed() / (1024 * 1024) + " MB)");
                     break;
                 case 3:
                     System.out.print("Loading the indirect index in memory, please wait...");
                     startTime = System.currentTimeMillis();
                     try {
-                        indirectIndex = IndirectIndex.loadIndirectIndex(websiteInfo.getWebsiteFolder() + "indirectindex.json", true);
+                        // the binary form of the index is only mapped in memory, the words are read when they are searched
+                        String indirectIndexFile = websiteInfo.getWebsiteFolder() + "indirectindex.bin";
+                        if (new File(indirectIndexFile).exists())
+                        {
+                            mappedIndex = PostingsReader.map(indirectIndexFile);
+                        }
+                        else
+                        {
+                            indirectIndex = IndirectIndex.loadIndirectIndex(websiteInfo.getWebsiteFolder() + "indirectindex.json", true);
+                        }
                     }
                     catch (IOException e)
                     {
@@ -115,7 +160,7 @@ public class Crawler {
                     System.out.println("OK (" + (double)elapsedTime / 1000 + " seconds)");
                     break;
                 case 4:
-                    if (indirectIndex == null)
+                    if (indirectIndex == null && mappedIndex == null)
                     {
                         System.out.println("\nERROR: The indirect index is not created / loaded in memory. Boolean search cannot be performed!");
                         break;
@@ -125,15 +170,28 @@ public class Crawler {
 
                     System.out.print("\nLoading... ");
                     startTime = System.currentTimeMillis();
-                    booleanSearchResults = BooleanSearch.Search(indirectIndex, query);
+                    StringBuilder plan = new StringBuilder(); // the plan of the query, for display
+                    try {
+                        booleanSearchResults = (mappedIndex != null) ? BooleanSearch.Search(mappedIndex, query, plan)
+                                : BooleanSearch.Search(indirectIndex, query, getDocumentTable(websiteInfo).size(), plan);
+                    }
+                    catch (IllegalArgumentException e)
+                    {
+                        System.out.println("\nERROR: " + e.getMessage());
+                        break;
+                    }
                     stopTime = System.currentTimeMillis();
                     elapsedTime = stopTime - startTime;
-                    if (booleanSearchResults != null)
+                    if (plan.length() > 0)
+                    {
+                        System.out.println("(plan: " + plan + ")");
+                    }
+                    if (booleanSearchResults != null && !booleanSearchResults.isEmpty())
                     {
-                        System.out.println("OK (" + booleanSearchResults.size() + " results found in " + (double)elapsedTime / 1000 + " seconds)");
+                        System.out.println("OK (" + booleanSearchResults.cardinality() + " results found in " + (double)elapsedTime / 1000 + " seconds)");
                         System.out.println("\nResults:");
-                        for (String doc : booleanSearchResults) {
-                            System.out.println("\t" + doc);
+                        for (int doc : booleanSearchResults.toArray()) {
+                            System.out.println("\t" + getDocumentTable(websiteInfo).getPath(doc));
                         }
                     }
                     else
@@ -142,23 +200,34 @@ public class Crawler {
                     }
                     break;
                 case 5:
-                    if (indirectIndex == null)
+                    if (!new File(websiteInfo.getWebsiteFolder() + "indirectindex.map").exists())
                     {
-                        System.out.println("\nERROR: The indirect index is not created / loaded in memory. The vectors associated with the documents cannot be created!");
+                        System.out.println("\nERROR: The indirect index is not created. The vectors associated with the documents cannot be created!");
                         break;
                     }
                     System.out.print("The vectors associated with HTML documents are created, waiting...");
                     startTime = System.currentTimeMillis();
-                    associatedVectors = VectorSearch.getAssociatedDocumentVectors(websiteInfo);
+                    associatedVectors = VectorSearch.getAssociatedDocumentVectors(websiteInfo, Runtime.getRuntime().availableProcessors());
+                    vectorStore = null;
                     stopTime = System.currentTimeMillis();
                     elapsedTime = stopTime - startTime;
-                    System.out.println("\nOK (" + (double)elapsedTime / 1000 + " seconds)");
+                    System.out.println("OK (" + (double)elapsedTime / 1000 + " seconds, "
+                            + String.format("%.1f", VectorSearch.lastProgress.getRate()) + " documents/second, "
+                            + VectorSearch.lastReusedVectors + " vectors reused)");
                     break;
                 case 6:
                     System.out.print("Loading the vectors associated with the documents in memory, wait...");
                     startTime = System.currentTimeMillis();
                     try {
-                        associatedVectors = VectorSearch.loadAssociatedVectors(websiteInfo);
+                        // the vector store is only mapped in memory, the vectors are not turned into maps
+                        if (new File(websiteInfo.getWebsiteFolder() + "documentVectors.bin").exists())
+                        {
+                            vectorStore = VectorSearch.loadVectorStore(websiteInfo);
+                        }
+                        else
+                        {
+                            associatedVectors = VectorSearch.loadAssociatedVectors(websiteInfo);
+                        }
                     }
                     catch (IOException e)
                     {
@@ -171,7 +240,7 @@ public class Crawler {
                     System.out.println("OK (" + (double)elapsedTime / 1000 + " seconds)");
                     break;
                 case 7:
-                    if (associatedVectors == null)
+                    if (associatedVectors == null && vectorStore == null)
                     {
                         System.out.println("\nERROR: The vectors associated with the documents were not loaded into memory. Vector search cannot be performed!");
                         break;
@@ -181,16 +250,27 @@ public class Crawler {
 
                     System.out.print("\nLoading... ");
                     startTime = System.currentTimeMillis();
-                    vectorSearchResults = VectorSearch.Search(query, websiteInfo, associatedVectors);
+                    vectorSearchResults = (vectorStore != null) ? VectorSearch.Search(query, websiteInfo, vectorStore, VECTOR_SEARCH_RESULTS)
+                            : VectorSearch.Search(query, websiteInfo, associatedVectors, VECTOR_SEARCH_RESULTS);
                     stopTime = System.currentTimeMillis();
                     elapsedTime = stopTime - startTime;
-                    if (vectorSearchResults != null && !vectorSearchResults.isEmpty())
+                    if (vectorSearchResults != null && vectorSearchResults.size() > 0)
                     {
-                        System.out.println("OK (" + vectorSearchResults.size() + " results found in " + (double)elapsedTime / 1000 + " seconds)");
+                        System.out.println("OK (best " + vectorSearchResults.size() + " results found in " + (double)elapsedTime / 1000 + " seconds)");
                         System.out.println("\nResults:");
-                        for (Map.Entry<String, Double> resultDoc : vectorSearchResults)
+                        // the results are shown one page at a time
+                        for (int rank = 0; rank < vectorSearchResults.size(); ++rank)
                         {
-                            System.out.println("\t" + resultDoc.getKey() + " (relevance " + (double)Math.round(resultDoc.getValue() * 100.0 * 100.0) / 100.0 + "%)");
+                            if (rank > 0 && rank % RESULTS_PER_PAGE == 0)
+                            {
+                                System.out.print("\t-- Enter for the next " + RESULTS_PER_PAGE + " results, q to stop -- ");
+                                if (queryScanner.nextLine().trim().equalsIgnoreCase("q"))
+                                {
+                                    break;
+                                }
+                            }
+                            System.out.println("\t" + (rank + 1) + ". " + getDocumentTable(websiteInfo).getPath(vectorSearchResults.getDocument(rank))
+                                    + " (relevance " + (double)Math.round(vectorSearchResults.getScore(rank) * 100.0 * 100.0) / 100.0 + "%)");
                         }
                     }
                     else
@@ -5,13 +5,24 @@ import org.jsoup.nodes.Document;
 
 import java.io.*;
 import java.nio.file.Files;
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.TreeMap;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class DirectIndex {
-    // takes the text from the document and puts it in a file
-    private static File getTextFromHTML(WebsiteInfo websiteInfo, Document doc, File html) throws IOException
+    // each indexing thread reuses its own tokenizer
+    private static final ThreadLocal<Tokenizer> tokenizers = ThreadLocal.withInitial(Tokenizer::new);
+
+    // if true, the text extracted from each HTML file is also saved in a ".txt" file next to it
+    public static boolean saveTextFiles = false;
+
+    // if true, the positions of the words in each document are saved in a ".positions" file next to it, for the phrase
+    // and NEAR searches; off by default, because the positions take more space than the rest of the index
+    public static boolean recordPositions = false;
+
+    // takes the text from the document (title, keywords, description and body)
+    private static String getTextFromHTML(WebsiteInfo websiteInfo, Document doc)
     {
         StringBuilder sb = new StringBuilder();
         sb.append(websiteInfo.getTitle(doc)); // title
@@ -21,8 +32,12 @@ public class DirectIndex {
         sb.append(websiteInfo.getDescription(doc));
         sb.append(System.lineSeparator());
         sb.append(doc.body().text());
-        String text = sb.toString();
+        return sb.toString();
+    }
 
+    // puts the text taken from the document in a file
+    private static File saveTextFile(String text, File html) throws IOException
+    {
         // generate numbers for the corresponding text file, with the extension txt
         StringBuilder textFileNameBuilder = new StringBuilder(html.getAbsolutePath());
 
@@ -49,88 +64,40 @@ public class DirectIndex {
         return new File(textFileName);
     }
 
-    // takes the text from the file, character by character and returns the list of words
-    private static HashMap<String, Integer> processDocument(String fileName) throws IOException
+    // splits the text of the document into words and returns the list of words
+    // the index files are named after the HTML file (fileName)
+    private static HashMap<String, Integer> processDocument(String fileName, CharSequence text) throws IOException
     {
-        HashMap<String, Integer> wordList = new HashMap<String, Integer>();
-
+        TermCounter wordCounter = new TermCounter(recordPositions); // word -> number of occurrences (and positions)
         TreeMap<String, Double> tfList = new TreeMap<>(); // for storing the tf
-        int numberOfWordsInDocument = 0; // for calculating the tf
-
-        // we read from the file character by character
-        FileReader inputStream = null;
-        inputStream = new FileReader(fileName);
-
-        // String delimiters = " \t\",.?!;:()[]{}@&#^%'`~<>/\\-–_|„”“=+*";
-        StringBuilder sb = new StringBuilder();
 
-        int c; // the current character
-        while ((c = inputStream.read()) != -1)
-        {
-            // if (delimiters.indexOf(textChars[i]) != -1) // we are on a separator
-            if (!Character.isLetterOrDigit((char)c)) // we are on a separator
+        // the text is split into words by the tokenizer of the current thread (separators = anything except letters and digits)
+        tokenizers.get().tokenize(text, (buffer, offset, length) -> {
+            // first, we check if it is an exception
+            if (ExceptionList.filter.contains(buffer, offset, length))
             {
-                String newWord = sb.toString(); // create the new word
-                if (newWord.equals("")) // ignore the empty word
-                {
-                    continue;
-                }
-
-               // first, we check if it is an exception
-                if (ExceptionList.exceptions.contains(newWord))
-                {
-                    // we add it as it is
-                    if (wordList.containsKey(newWord)) // if it already exists in the HashMap
-                    {
-                        wordList.put(newWord, wordList.get(newWord) + 1); // we increase the number of occurrences
-                    } else // if not, we add it
-                    {
-                        wordList.put(newWord, 1);
-                    }
-                    ++numberOfWordsInDocument;
-                }
-                // then if it is a stopword
-                else if (StopWordList.stopwords.contains(newWord))
-                {
-                    // we ignore it
-                    sb.setLength(0);
-                    continue;
-                }
-                else // dictionary word
-                {
-                    // the Porter algorithm is used for stemming
-                    PorterStemmer stemmer = new PorterStemmer();
-                    stemmer.add(newWord.toCharArray(), newWord.length());
-                    stemmer.stem();
-                    newWord = stemmer.toString();
-
-                    if (wordList.containsKey(newWord)) // if it already exists in the HashMap
-                    {
-                        wordList.put(newWord, wordList.get(newWord) + 1); // we increase the number of occurrences
-                    } else // if not, we add it
-                    {
-                        wordList.put(newWord, 1);
-                    }
-                    ++numberOfWordsInDocument;
-                }
-
-                // System.out.println(newWord + " -> " + hashText.get(newWord));
-                sb.setLength(0); // we clean the StringBuilder
+                // we add it as it is
+                wordCounter.add(buffer, offset, length);
             }
-            else // we are in the middle of a word
+            // then if it is a stopword
+            else if (StopWordList.filter.contains(buffer, offset, length))
             {
-                sb.append((char)c); // add the current letter to the word being created
+                // we ignore it
             }
-        }
-
-        // remove the empty word
-        wordList.remove("");
+            else // dictionary word
+            {
+                // the Porter algorithm is used for stemming (the stems of the frequent words are cached)
+                wordCounter.add(StemCache.shared.stem(buffer, offset, length));
+            }
+        });
+        HashMap<String, Integer> wordList = wordCounter.toHashMap();
+        int numberOfWordsInDocument = wordCounter.getTotal(); // for calculating the tf
 
         // write in the file the list of words and the number of occurrences (the direct index)
         StringBuilder sbDirectIndexFileName = new StringBuilder(fileName);
 
         // the file will have the extension ".directindex.json" added to the original HTML file name
-        sbDirectIndexFileName.replace(sbDirectIndexFileName.lastIndexOf(".") + 1, sbDirectIndexFileName.length(), "directindex.json");
+        sbDirectIndexFileName.append(".directindex.json");
         Writer directIndexWriter = new BufferedWriter(new OutputStreamWriter(
                 new FileOutputStream(sbDirectIndexFileName.toString()), "utf-8"));
 
@@ -140,7 +107,6 @@ public class DirectIndex {
         directIndexWriter.write(directIndexJsonFile);
         directIndexWriter.close();
 
-        inputStream.close();
         // System.out.println("The words in the text on the website have been processed!");
 
         // for tf calculation
@@ -152,7 +118,7 @@ public class DirectIndex {
 
         // write the tf for the current document in a file
         StringBuilder sbTfFileName = new StringBuilder(fileName);
-        sbTfFileName.replace(sbTfFileName.lastIndexOf(".") + 1, sbTfFileName.length(), "tf.json");
+        sbTfFileName.append(".tf.json");
         Writer tfWriter = new BufferedWriter(new OutputStreamWriter(
                 new FileOutputStream(sbTfFileName.toString()), "utf-8"));
 
@@ -162,21 +128,169 @@ public class DirectIndex {
         tfWriter.write(tfJsonFile);
         tfWriter.close();
 
+        // the positions of the words (the position of a word = the number of words kept before it, the stopwords being skipped)
+        File positionsFile = new File(fileName + ".positions");
+        if (wordCounter.hasPositions())
+        {
+            writePositions(positionsFile, wordCounter);
+        }
+        else
+        {
+            positionsFile.delete(); // left by an earlier indexing with positions
+        }
+
         return wordList;
     }
 
-    // calculate the index directly
-    public static HashMap<String, HashMap<String, Integer>> directIndex(WebsiteInfo websiteInfo) throws IOException
+    // writes the positions of the words of a document: the number of words, then for each word
+    // the word (UTF), the number of occurrences and the gaps between the positions, as varints
+    private static void writePositions(File positionsFile, TermCounter wordCounter) throws IOException
     {
-        HashMap<String, HashMap<String, Integer>> directIndex = new HashMap<>();
-        Gson gsonBuilder = new GsonBuilder().setPrettyPrinting().create();
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(positionsFile)));
+        output.writeInt(wordCounter.size());
+        for (int w = 0; w < wordCounter.size(); w++)
+        {
+            output.writeUTF(wordCounter.getWord(w));
+            VarInt.write(output, wordCounter.getCount(w));
+            int previous = 0;
+            for (int position : wordCounter.getPositions(w))
+            {
+                VarInt.write(output, position - previous);
+                previous = position;
+            }
+        }
+        output.close();
+    }
 
-        String websiteFolder = websiteInfo.getWebsiteFolder();
-        String baseUri = websiteInfo.getBaseUri();
+    // reads the ".positions" file of a document: word -> positions of the word (increasing)
+    static HashMap<String, int[]> readPositions(File positionsFile) throws IOException
+    {
+        HashMap<String, int[]> positions = new HashMap<>();
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(positionsFile)));
+        try {
+            for (int words = input.readInt(); words > 0; words--)
+            {
+                String word = input.readUTF();
+                int[] wordPositions = new int[VarInt.read(input)];
+                int position = 0;
+                for (int p = 0; p < wordPositions.length; p++)
+                {
+                    position += VarInt.read(input);
+                    wordPositions[p] = position;
+                }
+                positions.put(word, wordPositions);
+            }
+        } finally {
+            input.close();
+        }
+        return positions;
+    }
+
+    // lists the files of a folder, separating the HTML files from the child folders
+    private static void scanFolder(String currentFolder, List<File> htmlFiles, List<String> childFolders) throws IOException
+    {
+        File folder = new File(currentFolder);
+        File[] listOfFiles = folder.listFiles();
+
+        if (listOfFiles == null)
+        {
+            // System.out.println("There are no files in the folder \"" + currentFolder + "\"!");
+            return;
+        }
+
+        // we go through the list of files / folders
+        for (File file : listOfFiles)
+        {
+            // if we have arrived at a file, we check that it is an HTML file
+            // (the type of the files written by the indexer itself, e.g. ".positions", is unknown: null)
+            if (file.isFile() && "text/html".equals(Files.probeContentType(file.toPath())))
+            {
+                htmlFiles.add(file);
+            }
+            else if (file.isDirectory()) // if it's a folder, we put it in the queue
+            {
+                childFolders.add(file.getAbsolutePath());
+            }
+        }
+    }
+
+    // parses one HTML file and creates its direct index and tf files
+    private static HashMap<String, Integer> indexFile(WebsiteInfo websiteInfo, File file) throws IOException
+    {
+        // parse the HTML file using JSOUP
+        Document doc = Jsoup.parse(file, null, websiteInfo.getBaseUri());
+        // System.out.println("[PARSARE] I parse the HTML file \"" + file.getAbsolutePath() + "\".");
+
+        return indexDocument(websiteInfo, file, doc);
+    }
+
+    // creates the direct index and tf files of an HTML file which is already parsed
+    // (the live crawler gives the pages one by one, as they are downloaded, instead of scanning the website folder)
+    public static HashMap<String, Integer> indexDocument(WebsiteInfo websiteInfo, File file, Document doc) throws IOException
+    {
+        // the text is tokenized directly from memory, the separate text file is optional
+        String text = getTextFromHTML(websiteInfo, doc);
+        if (saveTextFiles)
+        {
+            saveTextFile(text, file);
+        }
+        // System.out.println("[TEXT] I took the text from the HTML file \"" + file.getAbsolutePath() + "\".");
+
+        // process the words, resulting in a HashMap of type (word -> number_of_occurrences)
+        // store the index directly in a file with the extension ".directindex"
+        return processDocument(file.getAbsolutePath(), text);
+    }
+
+    // gives the documents their ids (in sorted order, so that the sequential and parallel runs give the same ids)
+    // saves the table of documents and returns the direct index by document id
+    private static HashMap<Integer, HashMap<String, Integer>> assignDocumentIds(WebsiteInfo websiteInfo,
+            Map<String, HashMap<String, Integer>> directIndex) throws IOException
+    {
+        DocumentTable documentTable = DocumentTable.create(new TreeSet<>(directIndex.keySet()), websiteInfo);
+        documentTable.save(websiteInfo.getWebsiteFolder() + "documents.table");
+
+        HashMap<Integer, HashMap<String, Integer>> directIndexById = new HashMap<>();
+        for (Map.Entry<String, HashMap<String, Integer>> document : directIndex.entrySet())
+        {
+            directIndexById.put(documentTable.getId(document.getKey()), document.getValue());
+        }
+        return directIndexById;
+    }
+
+    // writes the mapping file, with the documents sorted so that the sequential and parallel runs give the same file
+    private static void writeMapFile(String websiteFolder, Map<String, String> mapFile) throws IOException
+    {
+        Gson gsonBuilder = new GsonBuilder().setPrettyPrinting().create();
 
         // to get the mapping file, called "directindex.map", located in the root directory
         Writer mapFileWriter = new BufferedWriter(new OutputStreamWriter(
                 new FileOutputStream(websiteFolder + "directindex.map"), "utf-8"));
+        mapFileWriter.write(gsonBuilder.toJson(new TreeMap<>(mapFile)));
+        mapFileWriter.close();
+        // System.out.println("[MAPARE] I have created the mapping file \"" + websiteFolder + "directindex.map\".");
+    }
+
+    // finishes a direct index whose documents were indexed one by one (indexDocument): writes the mapping file
+    // and gives the documents their ids
+    public static HashMap<Integer, HashMap<String, Integer>> directIndex(WebsiteInfo websiteInfo,
+            Map<String, HashMap<String, Integer>> directIndex) throws IOException
+    {
+        HashMap<String, String> mapFile = new HashMap<>();
+        for (String fileName : directIndex.keySet())
+        {
+            mapFile.put(fileName, fileName + ".directindex.json");
+        }
+        writeMapFile(websiteInfo.getWebsiteFolder(), mapFile);
+
+        return assignDocumentIds(websiteInfo, directIndex);
+    }
+
+    // calculate the index directly
+    public static HashMap<Integer, HashMap<String, Integer>> directIndex(WebsiteInfo websiteInfo) throws IOException
+    {
+        HashMap<String, HashMap<String, Integer>> directIndex = new HashMap<>();
+
+        String websiteFolder = websiteInfo.getWebsiteFolder();
         HashMap<String, String> mapFile = new HashMap<>();
 
         // for directory traversal, we use a queue
@@ -189,54 +303,126 @@ public class DirectIndex {
         {
             // preluam un folder din coada
             String currentFolder = folderQueue.pop();
-            File folder = new File(currentFolder);
-            File[] listOfFiles = folder.listFiles();
+            List<File> htmlFiles = new ArrayList<>();
+            scanFolder(currentFolder, htmlFiles, folderQueue);
 
-            // we go through the list of files / folders
-            try {
-                for (File file : listOfFiles)
-                {
-                    // if we have arrived at a file, we check that it is an HTML file
-                    if (file.isFile() && Files.probeContentType(file.toPath()).equals("text/html"))
-                    {
-                        // parse the HTML file using JSOUP
-                        Document doc = Jsoup.parse(file, null, baseUri);
-                        String fileName = file.getAbsolutePath();
-                        // System.out.println("[PARSARE] I parse the HTML file \"" + fileName + "\".");
-
-                        // stocam textul in fisier separat
-                        File textFile = getTextFromHTML(websiteInfo, doc, file);
-                        String textFileName = textFile.getAbsolutePath();
-                        // System.out.println("[TEXT] I took the text from the HTML file \"" + fileName + "\".");
-
-                        // process the words, resulting in a HashMap of type (word -> number_of_occurrences)
-                        // store the index directly in a file with the extension ".directindex"
-                        HashMap<String, Integer> currentDocWords = processDocument(textFileName);
-
-                        // add the document and the list of words to the final HashMap
-                        directIndex.put(fileName, currentDocWords);
-
-                        // add the current document, together with the directly associated index in the mapping file
-                        mapFile.put(fileName, fileName + ".directindex.json");
-
-                        // System.out.println("[INDEX_DIRECT] I created the index directly from the TEXT file \"" + textFileName + "\".");
-                    }
-                    else if (file.isDirectory()) // if it's a folder, we put it in the queue
-                    {
-                        folderQueue.add(file.getAbsolutePath());
-                    }
-                }
-            } catch (NullPointerException e) {
-                // System.out.println("There are no files in the folder \"" + currentFolder + "\"!");
+            for (File file : htmlFiles)
+            {
+                String fileName = file.getAbsolutePath();
+
+                // add the document and the list of words to the final HashMap
+                directIndex.put(fileName, indexFile(websiteInfo, file));
+
+                // add the current document, together with the directly associated index in the mapping file
+                mapFile.put(fileName, fileName + ".directindex.json");
             }
         }
 
         // write the JSON mapping file
-        mapFileWriter.write(gsonBuilder.toJson(mapFile));
-        mapFileWriter.close();
-        // System.out.println(System.lineSeparator());
-        // System.out.println("[MAPARE] I have created the mapping file \"" + websiteFolder + "directindex.map\".");
+        writeMapFile(websiteFolder, mapFile);
+
+        return assignDocumentIds(websiteInfo, directIndex);
+    }
+
+    // calculate the index directly, splitting the folders and the HTML files between the threads of a ForkJoinPool
+    public static HashMap<Integer, HashMap<String, Integer>> directIndex(WebsiteInfo websiteInfo, int parallelism) throws IOException
+    {
+        if (parallelism <= 1)
+        {
+            return directIndex(websiteInfo);
+        }
+
+        // each document is written by a single task, so the concurrent maps are enough (no global lock)
+        ConcurrentHashMap<String, HashMap<String, Integer>> directIndex = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, String> mapFile = new ConcurrentHashMap<>();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new FolderTask(websiteInfo, websiteInfo.getWebsiteFolder(), directIndex, mapFile));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+
+        // write the JSON mapping file
+        writeMapFile(websiteInfo.getWebsiteFolder(), mapFile);
+
+        return assignDocumentIds(websiteInfo, directIndex);
+    }
+
+    // task that goes through a folder: one subtask for each HTML file and one for each child folder
+    private static class FolderTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final WebsiteInfo websiteInfo;
+        private final String folder;
+        private final ConcurrentHashMap<String, HashMap<String, Integer>> directIndex;
+        private final ConcurrentHashMap<String, String> mapFile;
+
+        FolderTask(WebsiteInfo websiteInfo, String folder, ConcurrentHashMap<String, HashMap<String, Integer>> directIndex,
+                   ConcurrentHashMap<String, String> mapFile)
+        {
+            this.websiteInfo = websiteInfo;
+            this.folder = folder;
+            this.directIndex = directIndex;
+            this.mapFile = mapFile;
+        }
+
+        @Override
+        protected void compute()
+        {
+            List<File> htmlFiles = new ArrayList<>();
+            List<String> childFolders = new ArrayList<>();
+            try {
+                scanFolder(folder, htmlFiles, childFolders);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
 
-        return directIndex;
+            List<RecursiveAction> tasks = new ArrayList<>();
+            for (File file : htmlFiles)
+            {
+                tasks.add(new FileTask(websiteInfo, file, directIndex, mapFile));
+            }
+            for (String childFolder : childFolders)
+            {
+                tasks.add(new FolderTask(websiteInfo, childFolder, directIndex, mapFile));
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    // task that parses, tokenizes and writes the index files of a single HTML file
+    private static class FileTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final WebsiteInfo websiteInfo;
+        private final File file;
+        private final ConcurrentHashMap<String, HashMap<String, Integer>> directIndex;
+        private final ConcurrentHashMap<String, String> mapFile;
+
+        FileTask(WebsiteInfo websiteInfo, File file, ConcurrentHashMap<String, HashMap<String, Integer>> directIndex,
+                 ConcurrentHashMap<String, String> mapFile)
+        {
+            this.websiteInfo = websiteInfo;
+            this.file = file;
+            this.directIndex = directIndex;
+            this.mapFile = mapFile;
+        }
+
+        @Override
+        protected void compute()
+        {
+            String fileName = file.getAbsolutePath();
+            try {
+                directIndex.put(fileName, indexFile(websiteInfo, file));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            mapFile.put(fileName, fileName + ".directindex.json");
+        }
     }
 }
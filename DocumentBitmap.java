@@ -0,0 +1,342 @@
+import java.util.Arrays;
+
+// a compressed set of document ids, in the style of Roaring bitmaps.
+// The ids are split in chunks of 65536 by their high 16 bits. A chunk with few
+// documents keeps its low 16 bits in a sorted char[] (array container); a chunk
+// with more than 4096 documents uses a long[1024] bitmap, where AND, OR and
+// AND NOT are computed 64 documents at a time. The operations return new
+// bitmaps and never modify their operands.
+class DocumentBitmap {
+    private static final int MAX_ARRAY_SIZE = 4096;
+    private static final int BITMAP_WORDS = 1024; // 65536 bits
+
+    private char[] keys = new char[4];          // the high 16 bits of the chunks, sorted
+    private Object[] containers = new Object[4]; // char[] (sorted low bits) or long[] (bitmap)
+    private int[] cardinalities = new int[4];
+    private int size = 0; // the number of chunks
+
+    // creates the bitmap of a sorted array of document ids.
+    public static DocumentBitmap of(int[] sortedDocuments, int length)
+    {
+        DocumentBitmap bitmap = new DocumentBitmap();
+        int start = 0;
+        while (start < length)
+        {
+            int key = sortedDocuments[start] >>> 16;
+            int end = start;
+            while (end < length && (sortedDocuments[end] >>> 16) == key) end++;
+
+            int count = end - start;
+            if (count <= MAX_ARRAY_SIZE)
+            {
+                char[] array = new char[count];
+                for (int d = start; d < end; d++) array[d - start] = (char) sortedDocuments[d];
+                bitmap.append((char) key, array, count);
+            }
+            else
+            {
+                long[] words = new long[BITMAP_WORDS];
+                for (int d = start; d < end; d++) words[(sortedDocuments[d] & 0xFFFF) >>> 6] |= 1L << sortedDocuments[d];
+                bitmap.append((char) key, words, count);
+            }
+            start = end;
+        }
+        return bitmap;
+    }
+
+    // creates the bitmap of the documents 0 .. numberOfDocuments - 1.
+    public static DocumentBitmap range(int numberOfDocuments)
+    {
+        int[] documents = new int[numberOfDocuments];
+        for (int d = 0; d < numberOfDocuments; d++) documents[d] = d;
+        return of(documents, numberOfDocuments);
+    }
+
+    public int cardinality()
+    {
+        int cardinality = 0;
+        for (int c = 0; c < size; c++) cardinality += cardinalities[c];
+        return cardinality;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public boolean contains(int document)
+    {
+        int c = Arrays.binarySearch(keys, 0, size, (char) (document >>> 16));
+        if (c < 0) return false;
+        Object container = containers[c];
+        if (container instanceof char[])
+        {
+            return Arrays.binarySearch((char[]) container, 0, cardinalities[c], (char) document) >= 0;
+        }
+        return (((long[]) container)[(document & 0xFFFF) >>> 6] & (1L << document)) != 0;
+    }
+
+    // returns the document ids, in increasing order.
+    public int[] toArray()
+    {
+        int[] documents = new int[cardinality()];
+        int d = 0;
+        for (int c = 0; c < size; c++)
+        {
+            int high = keys[c] << 16;
+            Object container = containers[c];
+            if (container instanceof char[])
+            {
+                char[] array = (char[]) container;
+                for (int i = 0; i < cardinalities[c]; i++) documents[d++] = high | array[i];
+            }
+            else
+            {
+                long[] words = (long[]) container;
+                for (int w = 0; w < BITMAP_WORDS; w++)
+                {
+                    long word = words[w];
+                    while (word != 0)
+                    {
+                        documents[d++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+        return documents;
+    }
+
+    public DocumentBitmap and(DocumentBitmap other)
+    {
+        DocumentBitmap result = new DocumentBitmap();
+        int i = 0, j = 0;
+        while (i < size && j < other.size)
+        {
+            if (keys[i] < other.keys[j])
+            {
+                i++;
+            }
+            else if (keys[i] > other.keys[j])
+            {
+                j++;
+            }
+            else
+            {
+                result.appendNormalized(keys[i], and(containers[i], cardinalities[i], other.containers[j], other.cardinalities[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    public DocumentBitmap or(DocumentBitmap other)
+    {
+        DocumentBitmap result = new DocumentBitmap();
+        int i = 0, j = 0;
+        while (i < size || j < other.size)
+        {
+            if (j == other.size || (i < size && keys[i] < other.keys[j]))
+            {
+                result.append(keys[i], containers[i], cardinalities[i]);
+                i++;
+            }
+            else if (i == size || keys[i] > other.keys[j])
+            {
+                result.append(other.keys[j], other.containers[j], other.cardinalities[j]);
+                j++;
+            }
+            else
+            {
+                result.appendNormalized(keys[i], or(containers[i], cardinalities[i], other.containers[j], other.cardinalities[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // returns the documents of this bitmap that are not in the other one.
+    public DocumentBitmap andNot(DocumentBitmap other)
+    {
+        DocumentBitmap result = new DocumentBitmap();
+        int j = 0;
+        for (int i = 0; i < size; i++)
+        {
+            while (j < other.size && other.keys[j] < keys[i]) j++;
+            if (j < other.size && other.keys[j] == keys[i])
+            {
+                result.appendNormalized(keys[i], andNot(containers[i], cardinalities[i], other.containers[j], other.cardinalities[j]));
+            }
+            else
+            {
+                result.append(keys[i], containers[i], cardinalities[i]);
+            }
+        }
+        return result;
+    }
+
+    // operations on two containers of the same chunk; a bitmap is returned as long[], an array as a trimmed char[]
+
+    private static Object and(Object a, int aSize, Object b, int bSize)
+    {
+        if (a instanceof char[] && b instanceof char[])
+        {
+            char[] x = (char[]) a, y = (char[]) b;
+            char[] result = new char[Math.min(aSize, bSize)];
+            int i = 0, j = 0, k = 0;
+            while (i < aSize && j < bSize)
+            {
+                if (x[i] < y[j]) i++;
+                else if (x[i] > y[j]) j++;
+                else { result[k++] = x[i]; i++; j++; }
+            }
+            return Arrays.copyOf(result, k);
+        }
+        if (a instanceof char[] || b instanceof char[])
+        {
+            // the array is probed in the bitmap
+            char[] array = (char[]) (a instanceof char[] ? a : b);
+            int arraySize = a instanceof char[] ? aSize : bSize;
+            long[] words = (long[]) (a instanceof char[] ? b : a);
+            char[] result = new char[arraySize];
+            int k = 0;
+            for (int i = 0; i < arraySize; i++)
+            {
+                if ((words[array[i] >>> 6] & (1L << array[i])) != 0) result[k++] = array[i];
+            }
+            return Arrays.copyOf(result, k);
+        }
+        long[] x = (long[]) a, y = (long[]) b;
+        long[] result = new long[BITMAP_WORDS];
+        for (int w = 0; w < BITMAP_WORDS; w++) result[w] = x[w] & y[w];
+        return result;
+    }
+
+    private static Object or(Object a, int aSize, Object b, int bSize)
+    {
+        if (a instanceof char[] && b instanceof char[] && aSize + bSize <= MAX_ARRAY_SIZE)
+        {
+            char[] x = (char[]) a, y = (char[]) b;
+            char[] result = new char[aSize + bSize];
+            int i = 0, j = 0, k = 0;
+            while (i < aSize || j < bSize)
+            {
+                if (j == bSize || (i < aSize && x[i] < y[j])) result[k++] = x[i++];
+                else if (i == aSize || x[i] > y[j]) result[k++] = y[j++];
+                else { result[k++] = x[i]; i++; j++; }
+            }
+            return Arrays.copyOf(result, k);
+        }
+        long[] result = toWords(a, aSize);
+        if (b instanceof char[])
+        {
+            char[] array = (char[]) b;
+            for (int i = 0; i < bSize; i++) result[array[i] >>> 6] |= 1L << array[i];
+        }
+        else
+        {
+            long[] y = (long[]) b;
+            for (int w = 0; w < BITMAP_WORDS; w++) result[w] |= y[w];
+        }
+        return result;
+    }
+
+    private static Object andNot(Object a, int aSize, Object b, int bSize)
+    {
+        if (a instanceof char[])
+        {
+            char[] x = (char[]) a;
+            char[] result = new char[aSize];
+            int k = 0;
+            if (b instanceof char[])
+            {
+                char[] y = (char[]) b;
+                int j = 0;
+                for (int i = 0; i < aSize; i++)
+                {
+                    while (j < bSize && y[j] < x[i]) j++;
+                    if (j == bSize || y[j] != x[i]) result[k++] = x[i];
+                }
+            }
+            else
+            {
+                long[] words = (long[]) b;
+                for (int i = 0; i < aSize; i++)
+                {
+                    if ((words[x[i] >>> 6] & (1L << x[i])) == 0) result[k++] = x[i];
+                }
+            }
+            return Arrays.copyOf(result, k);
+        }
+        long[] result = ((long[]) a).clone();
+        if (b instanceof char[])
+        {
+            char[] array = (char[]) b;
+            for (int i = 0; i < bSize; i++) result[array[i] >>> 6] &= ~(1L << array[i]);
+        }
+        else
+        {
+            long[] y = (long[]) b;
+            for (int w = 0; w < BITMAP_WORDS; w++) result[w] &= ~y[w];
+        }
+        return result;
+    }
+
+    private static long[] toWords(Object container, int cardinality)
+    {
+        if (container instanceof long[]) return ((long[]) container).clone();
+        long[] words = new long[BITMAP_WORDS];
+        char[] array = (char[]) container;
+        for (int i = 0; i < cardinality; i++) words[array[i] >>> 6] |= 1L << array[i];
+        return words;
+    }
+
+    // adds the result of an operation, converting small bitmaps back to arrays and dropping empty chunks
+    private void appendNormalized(char key, Object container)
+    {
+        if (container instanceof char[])
+        {
+            char[] array = (char[]) container;
+            if (array.length > 0) append(key, array, array.length);
+            return;
+        }
+        long[] words = (long[]) container;
+        int cardinality = 0;
+        for (long word : words) cardinality += Long.bitCount(word);
+        if (cardinality == 0) return;
+        if (cardinality > MAX_ARRAY_SIZE)
+        {
+            append(key, words, cardinality);
+            return;
+        }
+        char[] array = new char[cardinality];
+        int k = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++)
+        {
+            long word = words[w];
+            while (word != 0)
+            {
+                array[k++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        append(key, array, cardinality);
+    }
+
+    // the containers are shared between bitmaps, which is safe because they are never modified after creation
+    private void append(char key, Object container, int cardinality)
+    {
+        if (size == keys.length)
+        {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+            cardinalities = Arrays.copyOf(cardinalities, size * 2);
+        }
+        keys[size] = key;
+        containers[size] = container;
+        cardinalities[size] = cardinality;
+        size++;
+    }
+}
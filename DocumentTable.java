@@ -0,0 +1,95 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+// assigns dense int ids (0, 1, 2, ...) to the documents of the website.
+// The indexes, the vectors and the searches work with these ids; the table is
+// only consulted to translate an id back to the path / URL of the document when
+// the results are displayed. It is persisted next to the indexes
+// ("documents.table").
+class DocumentTable {
+    private static final int MAGIC = 0x57434454; // "WCDT"
+
+    private final ArrayList<String> paths = new ArrayList<>();
+    private final ArrayList<String> urls = new ArrayList<>();
+    private final HashMap<String, Integer> ids = new HashMap<>();
+
+    // creates the table of the given documents (absolute paths); the ids follow
+    // the order of the collection.
+    public static DocumentTable create(Collection<String> documents, WebsiteInfo websiteInfo)
+    {
+        DocumentTable table = new DocumentTable();
+        for (String document : documents)
+        {
+            table.add(document, websiteInfo.getDocumentUrl(document));
+        }
+        return table;
+    }
+
+    // adds a document and returns its id (the existing id if it was already added).
+    public int add(String path, String url)
+    {
+        Integer id = ids.get(path);
+        if (id != null)
+        {
+            return id;
+        }
+        ids.put(path, paths.size());
+        paths.add(path);
+        urls.add(url);
+        return paths.size() - 1;
+    }
+
+    // returns the id of the document, or -1 if it is not in the table.
+    public int getId(String path)
+    {
+        Integer id = ids.get(path);
+        return id == null ? -1 : id;
+    }
+
+    public String getPath(int id)
+    {
+        return paths.get(id);
+    }
+
+    public String getUrl(int id)
+    {
+        return urls.get(id);
+    }
+
+    public int size()
+    {
+        return paths.size();
+    }
+
+    public void save(String fileName) throws IOException
+    {
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(paths.size());
+            for (int id = 0; id < paths.size(); id++)
+            {
+                output.writeUTF(paths.get(id));
+                output.writeUTF(urls.get(id));
+            }
+        }
+    }
+
+    public static DocumentTable load(String fileName) throws IOException
+    {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (input.readInt() != MAGIC)
+            {
+                throw new IOException("Not a document table: " + fileName);
+            }
+            DocumentTable table = new DocumentTable();
+            int size = input.readInt();
+            for (int id = 0; id < size; id++)
+            {
+                table.add(input.readUTF(), input.readUTF());
+            }
+            return table;
+        }
+    }
+}
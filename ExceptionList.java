@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -12,4 +13,13 @@ public class ExceptionList {
             "IAB",
             "AQM"
     );
+
+    // the list above, as a set that can be tested in O(length), directly from a char[] slice
+    public static volatile TermFilter filter = new TermFilter(exceptions);
+
+    // replaces the exceptions with the ones from a file (one word per line), for example a list specific to a website
+    public static void load(String fileName) throws IOException
+    {
+        filter = TermFilter.load(fileName);
+    }
 }
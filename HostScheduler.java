@@ -0,0 +1,187 @@
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+// the frontier of the live crawler, polite to every host: the URLs wait in a
+// queue per host, and a host only gives its next URL when it is ready, i.e.
+// - its token bucket has a token: the bucket fills up at "requests per second"
+// tokens per second, up to "burst" tokens, and each request takes one;
+// - it has less than "max in flight" requests being fetched (done
+// must be called when a request is over).
+// A host can be slowed down further, with a delay between two requests (the
+// Crawl-delay of its robots.txt, see setCrawlDelay).
+// The hosts which have URLs and free connections wait in a priority queue,
+// ordered by the time at which they will have a token (and, for the same time,
+// by their arrival in the queue), so the ready hosts are served in turn and a
+// host which must wait does not hold back the others.
+// All the methods are synchronized: the scheduler is shared by the dispatching
+// thread and the threads which fetch the pages.
+class HostScheduler {
+    // the URLs and the state of the politeness of one host
+    private static class Host
+    {
+        final ArrayDeque<String> urls = new ArrayDeque<>();
+        double requestsPerSecond;
+        double burst;
+        int maxInFlight;
+        double tokens;
+        long lastRefill;          // nanoseconds
+        int inFlight = 0;
+        long readyTime = 0;       // nanoseconds: the time at which it will have a token
+        long sequence = 0;        // the order of arrival in the queue of the hosts, for the same ready time
+        boolean waiting = false;  // in the queue of the hosts
+
+        Host(double requestsPerSecond, double burst, int maxInFlight, long now)
+        {
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = burst;
+            this.maxInFlight = maxInFlight;
+            this.tokens = burst;
+            this.lastRefill = now;
+        }
+    }
+
+    private final double requestsPerSecond;
+    private final double burst;
+    private final int maxInFlight;
+    private final HashMap<String, Host> hosts = new HashMap<>();
+    private final PriorityQueue<Host> readyQueue = new PriorityQueue<>((host1, host2) -> (host1.readyTime != host2.readyTime)
+            ? Long.compare(host1.readyTime, host2.readyTime) : Long.compare(host1.sequence, host2.sequence));
+    private long nextSequence = 0;
+    private int size = 0;
+
+    // creates a scheduler which sends at most requestsPerSecond requests per
+    // second to a host (after a burst of at most "burst" requests), with at most
+    // maxInFlight requests at the same time.
+    public HostScheduler(double requestsPerSecond, double burst, int maxInFlight)
+    {
+        if (requestsPerSecond <= 0 || burst < 1 || maxInFlight < 1)
+        {
+            throw new IllegalArgumentException("Invalid politeness: " + requestsPerSecond + " requests/second, burst "
+                    + burst + ", " + maxInFlight + " in flight");
+        }
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.maxInFlight = maxInFlight;
+    }
+
+    // returns the host of a URL (with its port, if any, in lower case), or null if it is not a valid URL.
+    static String getHost(String url)
+    {
+        try {
+            String authority = new URL(url).getAuthority();
+            return (authority != null) ? authority.toLowerCase(Locale.ROOT) : null;
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    // adds a URL at the end of the queue of its host; an invalid URL is ignored.
+    public synchronized void add(String url)
+    {
+        String name = getHost(url);
+        if (name == null) return;
+        long now = System.nanoTime();
+        Host host = hosts.get(name);
+        if (host == null) hosts.put(name, host = new Host(requestsPerSecond, burst, maxInFlight, now));
+        host.urls.add(url);
+        size++;
+        if (schedule(host, now)) notifyAll();
+    }
+
+    // returns the next URL of a ready host, waiting at most the given time for a
+    // host to be ready, or null if none is ready in time. The request must be
+    // reported with done when it is over.
+    public synchronized String poll(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true)
+        {
+            long now = System.nanoTime();
+            Host host = readyQueue.peek();
+            if (host != null && host.readyTime <= now)
+            {
+                readyQueue.poll();
+                host.waiting = false;
+                refill(host, now);
+                host.tokens -= 1;
+                host.inFlight++;
+                size--;
+                String url = host.urls.poll();
+                schedule(host, now);
+                return url;
+            }
+            long wakeUp = (host != null) ? Math.min(host.readyTime, deadline) : deadline;
+            if (now >= deadline) return null;
+            TimeUnit.NANOSECONDS.timedWait(this, Math.max(wakeUp - now, 1));
+        }
+    }
+
+    // reports that a request given by poll is over: its host has one more free connection.
+    public synchronized void done(String url)
+    {
+        Host host = hosts.get(getHost(url));
+        if (host == null || host.inFlight == 0) return;
+        host.inFlight--;
+        if (schedule(host, System.nanoTime())) notifyAll();
+    }
+
+    // leaves at least delayMillis between two requests to the host (of the URL):
+    // one request at a time, and no burst. A delay of 0 gives the host back the
+    // politeness of the scheduler.
+    public synchronized void setCrawlDelay(String url, long delayMillis)
+    {
+        String name = getHost(url);
+        if (name == null) return;
+        long now = System.nanoTime();
+        Host host = hosts.get(name);
+        if (host == null) hosts.put(name, host = new Host(requestsPerSecond, burst, maxInFlight, now));
+        refill(host, now);
+        if (delayMillis > 0)
+        {
+            host.requestsPerSecond = Math.min(requestsPerSecond, 1000.0 / delayMillis);
+            host.burst = 1;
+            host.maxInFlight = 1;
+            host.tokens = Math.min(host.tokens, 1);
+        }
+        else
+        {
+            host.requestsPerSecond = requestsPerSecond;
+            host.burst = burst;
+            host.maxInFlight = maxInFlight;
+        }
+    }
+
+    // returns the number of URLs waiting, for all the hosts.
+    public synchronized int size()
+    {
+        return size;
+    }
+
+    public synchronized boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    // puts the host in the queue if it has URLs and a free connection; returns true if it was added
+    private boolean schedule(Host host, long now)
+    {
+        if (host.waiting || host.urls.isEmpty() || host.inFlight >= host.maxInFlight) return false;
+        refill(host, now);
+        host.readyTime = (host.tokens >= 1) ? now : now + (long) Math.ceil((1 - host.tokens) * 1e9 / host.requestsPerSecond);
+        host.sequence = nextSequence++;
+        host.waiting = true;
+        readyQueue.add(host);
+        return true;
+    }
+
+    private void refill(Host host, long now)
+    {
+        host.tokens = Math.min(host.burst, host.tokens + (now - host.lastRefill) * host.requestsPerSecond / 1e9);
+        host.lastRefill = now;
+    }
+}
@@ -0,0 +1,190 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// simulates a crawl of several hosts through the HostScheduler: each host is a
+// stub HTTP server (the embedded one of the JDK) answering after its own latency
+// (from 2 to 44 ms), and a pool of workers polls the scheduler, fetches the URL
+// and calls done, like LiveCrawler. Then checks the politeness seen by each host:
+// at most "requests per second + burst" requests in any window of 1 second, and
+// at most "max in flight" requests at the same time. The time of the crawl and
+// the number of requests per second of each host are reported.
+// Usage: HostSchedulerBenchmark [hosts] [requests per host] [workers]
+class HostSchedulerBenchmark {
+    private static final double REQUESTS_PER_SECOND = 50;
+    private static final double BURST = 5;
+    private static final int MAX_IN_FLIGHT = 2;
+
+    // a stub host: its latency, and what it saw
+    private static class StubHost
+    {
+        final int latencyMillis;
+        final HttpServer server;
+        final ConcurrentLinkedQueue<Long> arrivals = new ConcurrentLinkedQueue<>(); // System.nanoTime() of each request
+        final AtomicInteger inFlight = new AtomicInteger(); // the requests given by the scheduler and not done yet
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        StubHost(int latencyMillis) throws IOException
+        {
+            this.latencyMillis = latencyMillis;
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/", exchange -> {
+                arrivals.add(System.nanoTime());
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = "<html><body>stub page</body></html>".getBytes();
+                exchange.getResponseHeaders().add("Content-Type", "text/html");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                exchange.close();
+            });
+            server.start();
+        }
+
+        String url(int page)
+        {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/page" + page + ".html";
+        }
+
+        private long[] sortedArrivals()
+        {
+            long[] times = new long[arrivals.size()];
+            int n = 0;
+            for (long time : arrivals)
+            {
+                times[n++] = time;
+            }
+            Arrays.sort(times);
+            return times;
+        }
+
+        // the number of requests per second, from the first request to the last one
+        double requestsPerSecond()
+        {
+            long[] times = sortedArrivals();
+            return (times.length > 1) ? (times.length - 1) * 1e9 / (times[times.length - 1] - times[0]) : 0;
+        }
+
+        // the largest number of requests received in a window of 1 second
+        int maxPerSecond()
+        {
+            long[] times = sortedArrivals();
+            int n = times.length;
+            int max = 0;
+            int first = 0;
+            for (int last = 0; last < n; ++last)
+            {
+                while (times[last] - times[first] >= TimeUnit.SECONDS.toNanos(1)) ++first;
+                max = Math.max(max, last - first + 1);
+            }
+            return max;
+        }
+
+        void stop()
+        {
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdownNow();
+        }
+    }
+
+    private static void fetch(String url) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try (InputStream input = connection.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            while (input.read(buffer) != -1)
+            {
+                // the body is read to the end, so the connection is reused
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        int numberOfHosts = (args.length > 0) ? Integer.parseInt(args[0]) : 8;
+        int requestsPerHost = (args.length > 1) ? Integer.parseInt(args[1]) : 150;
+        int workers = (args.length > 2) ? Integer.parseInt(args[2]) : 16;
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+
+        List<StubHost> hosts = new ArrayList<>();
+        HostScheduler scheduler = new HostScheduler(REQUESTS_PER_SECOND, BURST, MAX_IN_FLIGHT);
+        ConcurrentHashMap<String, StubHost> hostOfUrl = new ConcurrentHashMap<>();
+        for (int h = 0; h < numberOfHosts; ++h)
+        {
+            hosts.add(new StubHost(2 + 42 * h / Math.max(numberOfHosts - 1, 1)));
+        }
+        for (int page = 0; page < requestsPerHost; ++page) // the URLs of the hosts are interleaved, as links would be
+        {
+            for (StubHost host : hosts)
+            {
+                String url = host.url(page);
+                hostOfUrl.put(url, host);
+                scheduler.add(url);
+            }
+        }
+
+        CountDownLatch remaining = new CountDownLatch(numberOfHosts * requestsPerHost);
+        AtomicInteger errors = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        long start = System.nanoTime();
+        for (int w = 0; w < workers; ++w)
+        {
+            pool.execute(() -> {
+                try {
+                    while (remaining.getCount() > 0)
+                    {
+                        String url = scheduler.poll(50, TimeUnit.MILLISECONDS);
+                        if (url == null) continue;
+                        StubHost host = hostOfUrl.get(url);
+                        host.maxInFlight.accumulateAndGet(host.inFlight.incrementAndGet(), Math::max);
+                        try {
+                            fetch(url);
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        } finally {
+                            host.inFlight.decrementAndGet();
+                            scheduler.done(url);
+                            remaining.countDown();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        remaining.await();
+        long elapsedNanos = System.nanoTime() - start;
+        pool.shutdownNow();
+
+        int maxPerSecond = (int) (REQUESTS_PER_SECOND + BURST);
+        boolean polite = true;
+        System.out.printf("%d hosts x %d requests, %d workers, %.0f requests/s per host (burst %.0f), %d in flight per host: "
+                        + "%d ms, %.0f requests/s in all, %d errors%n", numberOfHosts, requestsPerHost, workers, REQUESTS_PER_SECOND, BURST,
+                MAX_IN_FLIGHT, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), numberOfHosts * requestsPerHost * 1e9 / elapsedNanos, errors.get());
+        for (StubHost host : hosts)
+        {
+            int perSecond = host.maxPerSecond();
+            boolean ok = perSecond <= maxPerSecond && host.maxInFlight.get() <= MAX_IN_FLIGHT;
+            polite &= ok;
+            System.out.printf("  latency %2d ms: %.1f requests/s, at most %d in a window of 1 s, at most %d in flight%s%n",
+                    host.latencyMillis, host.requestsPerSecond(), perSecond, host.maxInFlight.get(), ok ? "" : "  TOO FAST");
+            host.stop();
+        }
+        System.out.println(polite ? "Every host stayed within its limits (at most " + maxPerSecond + " requests in any second, "
+                + MAX_IN_FLIGHT + " in flight)" : "A host received too many requests");
+        if (!polite || errors.get() > 0) System.exit(1);
+    }
+}
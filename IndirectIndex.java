@@ -0,0 +1,468 @@
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.util.*;
+
+public class IndirectIndex {
+    // the maximum number of postings <word, document, number of occurrences> kept in memory before they are written in a sorted run on disk
+    public static int maxPostingsInMemory = 500000;
+    // the maximum number of sorted runs merged at the same time (each run being merged is an open file)
+    public static int maxRunsPerMerge = 64;
+
+    private static TreeMap<String, HashMap<Integer, Integer>> indirectIndexCollection = null;
+    private static boolean indirectIndexLoaded = false;
+    private static long peakHeapUsed = 0;
+
+    // an entry of the indirect index: the word appears in the document for a number of times
+    private static class Posting implements Comparable<Posting>
+    {
+        final String word;
+        final int document; // the id of the document
+        final int count;
+        final int[] positions; // the positions of the word in the document (null if the positions are not recorded)
+
+        Posting(String word, int document, int count, int[] positions)
+        {
+            this.word = word;
+            this.document = document;
+            this.count = count;
+            this.positions = positions;
+        }
+
+        @Override
+        public int compareTo(Posting other)
+        {
+            int result = word.compareTo(other.word);
+            return result != 0 ? result : Integer.compare(document, other.document);
+        }
+    }
+
+    // reads the postings of a sorted run, one by one
+    private static class RunReader
+    {
+        private final DataInputStream input;
+        private final boolean withPositions;
+        final long size; // the number of postings of the run
+        private long remaining;
+        Posting current;
+
+        RunReader(File runFile, boolean withPositions) throws IOException
+        {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), 1 << 16));
+            this.withPositions = withPositions;
+            try {
+                size = input.readLong();
+                remaining = size;
+                advance();
+            } catch (IOException e) {
+                input.close();
+                throw e;
+            }
+        }
+
+        void close() throws IOException
+        {
+            input.close();
+        }
+
+        void advance() throws IOException
+        {
+            if (remaining == 0)
+            {
+                current = null;
+                input.close();
+                return;
+            }
+            String word = input.readUTF();
+            int document = input.readInt();
+            int count = input.readInt();
+            int[] positions = null;
+            if (withPositions)
+            {
+                positions = new int[count];
+                int position = 0;
+                for (int p = 0; p < count; p++)
+                {
+                    position += VarInt.read(input);
+                    positions[p] = position;
+                }
+            }
+            current = new Posting(word, document, count, positions);
+            --remaining;
+        }
+    }
+
+    // the name of a new run file, which is added to the list of the run files (deleted at the end)
+    private static File newRunFile(String websiteFolder, List<File> runFiles)
+    {
+        File runFile = new File(websiteFolder + "indirectindex.run" + runFiles.size());
+        runFiles.add(runFile);
+        return runFile;
+    }
+
+    // sorts the postings in memory and writes them in a new run file
+    private static void writeRun(File runFile, ArrayList<Posting> postings) throws IOException
+    {
+        Collections.sort(postings);
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), 1 << 16))) {
+            output.writeLong(postings.size());
+            for (Posting posting : postings)
+            {
+                writePosting(output, posting);
+            }
+        }
+        postings.clear();
+    }
+
+    private static void writePosting(DataOutputStream output, Posting posting) throws IOException
+    {
+        output.writeUTF(posting.word);
+        output.writeInt(posting.document);
+        output.writeInt(posting.count);
+        if (posting.positions != null)
+        {
+            int previous = 0;
+            for (int position : posting.positions)
+            {
+                VarInt.write(output, position - previous);
+                previous = position;
+            }
+        }
+    }
+
+    // opens the runs; the smallest posting of all the runs is always on top of the queue
+    // (the readers are added to the list as soon as they are open, so they can be closed whatever happens)
+    private static PriorityQueue<RunReader> openRuns(List<File> runFiles, boolean withPositions, List<RunReader> readers) throws IOException
+    {
+        PriorityQueue<RunReader> runs = new PriorityQueue<>((r1, r2) -> r1.current.compareTo(r2.current));
+        for (File runFile : runFiles)
+        {
+            RunReader run = new RunReader(runFile, withPositions);
+            readers.add(run);
+            if (run.current != null)
+            {
+                runs.add(run);
+            }
+        }
+        return runs;
+    }
+
+    private static void closeRuns(List<RunReader> readers) throws IOException
+    {
+        for (RunReader run : readers)
+        {
+            run.close();
+        }
+        readers.clear();
+    }
+
+    // merges sorted runs into one sorted run (an intermediate pass, when there are too many runs to open at once)
+    private static void mergeRuns(List<File> inputs, File runFile, boolean withPositions) throws IOException
+    {
+        List<RunReader> readers = new ArrayList<>();
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), 1 << 16))) {
+            PriorityQueue<RunReader> runs = openRuns(inputs, withPositions, readers);
+            long size = 0;
+            for (RunReader run : readers)
+            {
+                size += run.size;
+            }
+            output.writeLong(size);
+            while (!runs.isEmpty())
+            {
+                RunReader run = runs.poll();
+                writePosting(output, run.current);
+                run.advance();
+                if (run.current != null)
+                {
+                    runs.add(run);
+                }
+            }
+        } finally {
+            closeRuns(readers);
+        }
+    }
+
+    // writes a JSON object of the form word -> (document id -> number of occurrences)
+    private static void writeIndex(String fileName, TreeMap<String, TreeMap<Integer, Integer>> index) throws IOException
+    {
+        Gson gsonBuilder = new GsonBuilder().setPrettyPrinting().create();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), "utf-8"))) {
+            writer.write(gsonBuilder.toJson(index));
+        }
+    }
+
+    // create the indirect index and the idf index
+    // the postings of all the documents never stay in memory together: they are written in sorted runs on disk,
+    // which are then merged (k-way merge) directly in the final files, in several passes if there are more than maxRunsPerMerge runs
+    // when the direct index was created with the positions of the words, the binary index stores them too
+    public static void indirectIndex(WebsiteInfo websiteInfo) throws IOException
+    {
+        List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP)
+            {
+                pool.resetPeakUsage();
+                heapPools.add(pool);
+            }
+        }
+
+        // the index in memory (if any) no longer corresponds to the files
+        indirectIndexLoaded = false;
+        indirectIndexCollection = null;
+
+        Gson gsonBuilder = new GsonBuilder().setPrettyPrinting().create();
+        String websiteFolder = websiteInfo.getWebsiteFolder();
+
+        // the mapping file of the direct index gives us the list of documents
+        File directIndexMapFile = new File(websiteFolder + "directindex.map");
+        Type mapFileType = new TypeToken<TreeMap<String, String>>(){}.getType();
+        TreeMap<String, String> directIndexMap = gsonBuilder.fromJson(new String(Files.readAllBytes(directIndexMapFile.toPath()), "utf-8"), mapFileType);
+        Type directIndexType = new TypeToken<HashMap<String, Integer>>(){}.getType();
+
+        // the documents are identified by the ids given when the direct index was created
+        DocumentTable documentTable = DocumentTable.load(websiteFolder + "documents.table");
+        int numberOfDocuments = documentTable.size();
+        TreeMap<String, String> mapFile = new TreeMap<>();
+        ArrayList<Posting> postings = new ArrayList<>();
+        ArrayList<File> runFiles = new ArrayList<>(); // all the run files created, deleted at the end
+        long postingsInMemory = 0; // the positions count as postings too
+
+        // the positions are indexed only if they were recorded for all the documents
+        boolean withPositions = !directIndexMap.isEmpty();
+        for (String document : directIndexMap.keySet())
+        {
+            withPositions &= new File(document + ".positions").exists();
+        }
+
+        List<RunReader> readers = new ArrayList<>();
+        try {
+            // first step: the local indirect index of each document + the sorted runs
+            List<File> runs = new ArrayList<>(); // the runs left to merge
+            for (Map.Entry<String, String> entry : directIndexMap.entrySet())
+            {
+                String document = entry.getKey();
+                int documentId = documentTable.getId(document);
+                HashMap<String, Integer> directIndex = gsonBuilder.fromJson(new String(Files.readAllBytes(new File(entry.getValue()).toPath()), "utf-8"), directIndexType);
+                HashMap<String, int[]> positions = withPositions ? DirectIndex.readPositions(new File(document + ".positions")) : null;
+
+                TreeMap<String, TreeMap<Integer, Integer>> localIndirectIndex = new TreeMap<>();
+                for (Map.Entry<String, Integer> word : directIndex.entrySet())
+                {
+                    TreeMap<Integer, Integer> documents = new TreeMap<>();
+                    documents.put(documentId, word.getValue());
+                    localIndirectIndex.put(word.getKey(), documents);
+
+                    int[] wordPositions = withPositions ? positions.get(word.getKey()) : null;
+                    postings.add(new Posting(word.getKey(), documentId, word.getValue(), wordPositions));
+                    postingsInMemory += 1 + (wordPositions == null ? 0 : wordPositions.length);
+                }
+
+                // the local indirect index is stored next to the document
+                writeIndex(document + ".indirectindex.json", localIndirectIndex);
+                mapFile.put(document, document + ".indirectindex.json");
+
+                if (postingsInMemory >= maxPostingsInMemory)
+                {
+                    File runFile = newRunFile(websiteFolder, runFiles);
+                    writeRun(runFile, postings);
+                    runs.add(runFile);
+                    postingsInMemory = 0;
+                }
+            }
+            if (!postings.isEmpty() || runs.isEmpty())
+            {
+                File runFile = newRunFile(websiteFolder, runFiles);
+                writeRun(runFile, postings);
+                runs.add(runFile);
+            }
+
+            // the JSON mapping file of the local indirect indexes
+            try (Writer mapFileWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(websiteFolder + "indirectindex.map"), "utf-8"))) {
+                mapFileWriter.write(gsonBuilder.toJson(mapFile));
+            }
+
+            // second step: while there are too many runs to open at once, they are merged in groups into longer runs
+            int maxRuns = Math.max(maxRunsPerMerge, 2);
+            while (runs.size() > maxRuns)
+            {
+                List<File> mergedRuns = new ArrayList<>();
+                for (int first = 0; first < runs.size(); first += maxRuns)
+                {
+                    List<File> group = runs.subList(first, Math.min(first + maxRuns, runs.size()));
+                    if (group.size() == 1)
+                    {
+                        mergedRuns.add(group.get(0));
+                        continue;
+                    }
+                    File runFile = newRunFile(websiteFolder, runFiles);
+                    mergeRuns(group, runFile, withPositions);
+                    mergedRuns.add(runFile);
+                    for (File merged : group)
+                    {
+                        merged.delete();
+                    }
+                }
+                runs = mergedRuns;
+            }
+
+            // last step: merge the remaining runs directly in the final files
+            PriorityQueue<RunReader> queue = openRuns(runs, withPositions, readers);
+            writeIndexes(websiteFolder, queue, numberOfDocuments, withPositions);
+        } finally {
+            closeRuns(readers);
+            for (File runFile : runFiles)
+            {
+                runFile.delete();
+            }
+        }
+
+        peakHeapUsed = 0;
+        for (MemoryPoolMXBean pool : heapPools)
+        {
+            peakHeapUsed += pool.getPeakUsage().getUsed();
+        }
+    }
+
+    // merges the runs in the final files: the JSON and binary indirect indexes and the idf
+    private static void writeIndexes(String websiteFolder, PriorityQueue<RunReader> runs, int numberOfDocuments, boolean withPositions) throws IOException
+    {
+        int[] wordDocuments = new int[16];
+        int[] wordCounts = new int[16];
+        int[][] wordPositions = new int[16][];
+
+        // the binary form of the index
+        try (PostingsWriter binaryWriter = new PostingsWriter(websiteFolder + "indirectindex.bin", numberOfDocuments, withPositions);
+             JsonWriter indexWriter = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(websiteFolder + "indirectindex.json"), "utf-8")));
+             JsonWriter idfWriter = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                     new FileOutputStream(websiteFolder + "idf.json"), "utf-8")))) {
+            indexWriter.setIndent("  ");
+            idfWriter.setIndent("  ");
+            indexWriter.beginObject();
+            idfWriter.beginObject();
+
+            while (!runs.isEmpty())
+            {
+                // all the postings of the current word come one after another, sorted by document
+                String word = runs.peek().current.word;
+                int numberOfDocumentsWithWord = 0;
+
+                indexWriter.name(word).beginObject();
+                while (!runs.isEmpty() && runs.peek().current.word.equals(word))
+                {
+                    RunReader run = runs.poll();
+                    indexWriter.name(Integer.toString(run.current.document)).value(run.current.count);
+                    if (numberOfDocumentsWithWord == wordDocuments.length)
+                    {
+                        wordDocuments = Arrays.copyOf(wordDocuments, 2 * numberOfDocumentsWithWord);
+                        wordCounts = Arrays.copyOf(wordCounts, 2 * numberOfDocumentsWithWord);
+                        wordPositions = Arrays.copyOf(wordPositions, 2 * numberOfDocumentsWithWord);
+                    }
+                    wordDocuments[numberOfDocumentsWithWord] = run.current.document;
+                    wordCounts[numberOfDocumentsWithWord] = run.current.count;
+                    wordPositions[numberOfDocumentsWithWord] = run.current.positions;
+                    ++numberOfDocumentsWithWord;
+
+                    run.advance();
+                    if (run.current != null)
+                    {
+                        runs.add(run);
+                    }
+                }
+                indexWriter.endObject();
+                if (withPositions)
+                {
+                    binaryWriter.addWord(word, wordDocuments, wordCounts, wordPositions, numberOfDocumentsWithWord);
+                    Arrays.fill(wordPositions, 0, numberOfDocumentsWithWord, null);
+                }
+                else
+                {
+                    binaryWriter.addWord(word, wordDocuments, wordCounts, numberOfDocumentsWithWord);
+                }
+
+                // idf = log(total number of documents / number of documents in which the word appears)
+                idfWriter.name(word).value(Math.log((double)numberOfDocuments / numberOfDocumentsWithWord));
+            }
+
+            indexWriter.endObject();
+            idfWriter.endObject();
+        }
+    }
+
+    // the maximum heap used during the last creation of the indirect index (in bytes)
+    public static long getPeakHeapUsed()
+    {
+        return peakHeapUsed;
+    }
+
+    // loads an indirect index from a JSON file (the global one, or the local one of a document) or from a binary ".bin" file
+    // the global index is kept in memory, so it is read from disk only once
+    public static TreeMap<String, HashMap<Integer, Integer>> loadIndirectIndex(String fileName, boolean global) throws IOException
+    {
+        if (global && indirectIndexLoaded)
+        {
+            return indirectIndexCollection;
+        }
+
+        TreeMap<String, HashMap<Integer, Integer>> indirectIndex;
+        if (fileName.endsWith(".bin"))
+        {
+            indirectIndex = PostingsReader.open(fileName).toIndirectIndex();
+        }
+        else
+        {
+            indirectIndex = loadJsonIndirectIndex(fileName);
+        }
+
+        if (global)
+        {
+            indirectIndexLoaded = true;
+            indirectIndexCollection = indirectIndex;
+        }
+        return indirectIndex;
+    }
+
+    // parses an indirect index in the JSON format
+    private static TreeMap<String, HashMap<Integer, Integer>> loadJsonIndirectIndex(String fileName) throws IOException
+    {
+        TreeMap<String, HashMap<Integer, Integer>> indirectIndex = new TreeMap<>();
+        JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(fileName), "UTF-8"));
+
+        // parse the JSON manually, object by object
+        reader.beginObject();
+        while (reader.hasNext())
+        {
+            // read each word here
+            String word = reader.nextName();
+
+            HashMap<Integer, Integer> documents = new HashMap<>();
+
+            // here start the documents in which the word appears (document id -> number of occurrences)
+            reader.beginObject();
+            while (reader.hasNext())
+            {
+                documents.put(Integer.parseInt(reader.nextName()), reader.nextInt());
+            }
+            reader.endObject();
+
+            indirectIndex.put(word, documents);
+        }
+        reader.endObject();
+        reader.close();
+
+        return indirectIndex;
+    }
+}
@@ -0,0 +1,102 @@
+import java.util.Arrays;
+import java.util.Comparator;
+
+// Multi-way intersection of sorted postings lists, for AND queries with many words.
+// All the lists advance in lockstep: the shortest list proposes a candidate
+// document and every other list jumps directly to the first document greater
+// than or equal to it (galloping search in an array, skips in the binary index).
+// When a list jumps past the candidate, its document becomes the new candidate.
+// The cost depends on the shortest list, not on the sum of the lengths.
+class Intersection {
+    private Intersection()
+    {
+    }
+
+    // intersects postings lists of the binary index.
+    public static DocumentBitmap intersect(PostingsIterator[] iterators)
+    {
+        PostingsIterator[] lists = iterators.clone();
+        Arrays.sort(lists, Comparator.comparingInt(PostingsIterator::cost));
+
+        int[] result = new int[lists[0].cost()];
+        int size = 0;
+        int candidate = lists[0].nextDocument();
+        while (candidate != PostingsIterator.NO_MORE_DOCUMENTS)
+        {
+            int l = 1;
+            while (l < lists.length)
+            {
+                int document = lists[l].document() >= candidate ? lists[l].document() : lists[l].advance(candidate);
+                if (document > candidate)
+                {
+                    // the candidate is missing from this list: the shortest list jumps to its document
+                    candidate = lists[0].advance(document);
+                    l = 1;
+                    if (candidate == PostingsIterator.NO_MORE_DOCUMENTS) break;
+                }
+                else
+                {
+                    l++;
+                }
+            }
+            if (candidate == PostingsIterator.NO_MORE_DOCUMENTS) break;
+
+            result[size++] = candidate;
+            candidate = lists[0].nextDocument();
+        }
+        return DocumentBitmap.of(result, size);
+    }
+
+    // intersects sorted arrays of document ids.
+    public static DocumentBitmap intersect(int[][] arrays)
+    {
+        int[][] lists = arrays.clone();
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+
+        int[] positions = new int[lists.length];
+        int[] result = new int[lists[0].length];
+        int size = 0;
+        for (int candidate : lists[0])
+        {
+            boolean inAll = true;
+            for (int l = 1; l < lists.length; l++)
+            {
+                positions[l] = gallop(lists[l], positions[l], candidate);
+                if (positions[l] == lists[l].length)
+                {
+                    return DocumentBitmap.of(result, size); // a list is exhausted
+                }
+                if (lists[l][positions[l]] != candidate)
+                {
+                    inAll = false;
+                    break;
+                }
+            }
+            if (inAll) result[size++] = candidate;
+        }
+        return DocumentBitmap.of(result, size);
+    }
+
+    // the position of the first element >= target, starting at "from" (exponential search, then binary search)
+    static int gallop(int[] list, int from, int target)
+    {
+        if (from >= list.length || list[from] >= target) return from;
+        int low = from, step = 1;
+        int high = from + step;
+        while (high < list.length && list[high] < target)
+        {
+            low = high;
+            step *= 2;
+            high = from + step;
+        }
+        high = Math.min(high, list.length);
+        // list[low] < target and (high == length or list[high] >= target)
+        while (high - low > 1)
+        {
+            int middle = (low + high) >>> 1;
+            if (list[middle] < target) low = middle;
+            else high = middle;
+        }
+        return high;
+    }
+}
@@ -0,0 +1,482 @@
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// crawls a website over HTTP, instead of indexing a copy of it downloaded
+// beforehand: the frontier starts with the base URI of the website, every HTML
+// page fetched is saved under the website folder (at the path of its URL) and
+// indexed right away (direct index and tf files, see
+// DirectIndex.indexDocument), and its links to other pages of the
+// website join the frontier, unless they were already seen: the fingerprints of
+// the URLs seen are kept in a UrlSeenStore (the files crawl.seen.N of the
+// website folder), so the memory does not grow with the number of URLs.
+// The pages are fetched by a pool of threads, with at most "concurrency"
+// requests at the same time, and the frontier is a HostScheduler: each
+// host receives at most a given number of requests per second, and of requests
+// at the same time. The number of pages and bytes per second are measured
+// during the crawl. The redirections are followed by the crawler (at most
+// MAX_REDIRECTS in a row): their targets join the frontier like the links.
+// The crawler follows the rules of the robots.txt of the website (see
+// RobotsCache): the URLs it disallows are not added to the frontier, and
+// its Crawl-delay slows down the host. While the robots.txt of a host cannot be
+// fetched, its URLs are parked and tried again when RobotsCache fetches it
+// again; they are given up after MAX_ROBOTS_FAILURES failures. A page whose meta robots tag (or
+// X-Robots-Tag header) says "noindex" is not saved nor indexed, and the links
+// of a "nofollow" page are not followed.
+class LiveCrawler {
+    private final WebsiteInfo websiteInfo;
+    private final int concurrency;
+    private int maxPages = 1000;
+    private int connectTimeout = 10000; // milliseconds
+    private int readTimeout = 30000;    // milliseconds
+    private int maxPageBytes = 10 * 1024 * 1024; // the larger pages are not downloaded to the end
+    private String userAgent = "WebCrawler/1.0";
+    private double requestsPerSecondPerHost = 10;
+    private int maxInFlightPerHost = 4;
+    private boolean followRobots = true;
+    private long robotsTtlMillis = 24 * 60 * 60 * 1000L;
+    private static final int MAX_REDIRECTS = 5; // the redirections followed in a row, before giving up
+    private static final int MAX_ROBOTS_FAILURES = 3; // the failed fetches of a robots.txt, before giving up its host
+    private static final long PARKED_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private HostScheduler frontier;
+    private RobotsCache robots;
+    private UrlSeenStore seen;
+    private volatile String baseUri; // the canonical base URI, or where the website moved to (see redirect)
+    private final ConcurrentHashMap<String, Integer> redirects = new ConcurrentHashMap<>(); // target -> number of redirections in a row
+    private final ConcurrentHashMap<String, HashMap<String, Integer>> directIndex = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder skipped = new LongAdder(); // the responses which are not HTML, or too large
+    private final LongAdder disallowed = new LongAdder(); // the URLs disallowed by robots.txt
+    private final ConcurrentLinkedQueue<String> parked = new ConcurrentLinkedQueue<>(); // the URLs of hosts without robots.txt for now
+    private final LongAdder unavailable = new LongAdder(); // the URLs given up, because their robots.txt could never be fetched
+    private final LongAdder notIndexed = new LongAdder(); // the pages with "noindex"
+    private final AtomicReference<IOException> failure = new AtomicReference<>(); // the first page which could not be saved
+    private ProgressMeter progress = new ProgressMeter("pages", 0);
+    private long elapsedMillis = 0; // the duration of the crawl, once it is over
+
+    // creates a crawler of the website, with at most "concurrency" pages fetched at the same time.
+    public LiveCrawler(WebsiteInfo websiteInfo, int concurrency)
+    {
+        if (concurrency < 1) throw new IllegalArgumentException("The concurrency must be at least 1: " + concurrency);
+        this.websiteInfo = websiteInfo;
+        this.concurrency = concurrency;
+        this.baseUri = websiteInfo.getCanonicalBaseUri();
+    }
+
+    // stops the crawl after this number of pages indexed (the errors, the
+    // responses which are not HTML and the "noindex" pages do not count).
+    public LiveCrawler setMaxPages(int maxPages)
+    {
+        this.maxPages = maxPages;
+        return this;
+    }
+
+    public LiveCrawler setTimeouts(int connectTimeout, int readTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    // skips the HTML pages larger than maxPageBytes (the download stops there).
+    public LiveCrawler setMaxPageSize(int maxPageBytes)
+    {
+        this.maxPageBytes = maxPageBytes;
+        return this;
+    }
+
+    // sends at most requestsPerSecond requests per second to a host, and at most
+    // maxInFlight requests to a host at the same time.
+    public LiveCrawler setPoliteness(double requestsPerSecond, int maxInFlight)
+    {
+        this.requestsPerSecondPerHost = requestsPerSecond;
+        this.maxInFlightPerHost = maxInFlight;
+        return this;
+    }
+
+    // follows (or ignores) robots.txt and the meta robots tags, keeping each robots.txt for ttlMillis.
+    public LiveCrawler setRobots(boolean followRobots, long ttlMillis)
+    {
+        this.followRobots = followRobots;
+        this.robotsTtlMillis = ttlMillis;
+        return this;
+    }
+
+    public LiveCrawler setUserAgent(String userAgent)
+    {
+        this.userAgent = userAgent;
+        return this;
+    }
+
+    // crawls the website and returns its direct index (document id -> (word ->
+    // number of occurrences)), like DirectIndex.directIndex: the mapping
+    // file and the table of documents are written for the pages fetched.
+    public HashMap<Integer, HashMap<String, Integer>> crawl() throws IOException
+    {
+        progress = new ProgressMeter("pages", maxPages).display();
+        frontier = new HostScheduler(requestsPerSecondPerHost, Math.max(requestsPerSecondPerHost, 1), maxInFlightPerHost);
+        robots = followRobots ? new RobotsCache(userAgent, robotsTtlMillis).setTimeouts(connectTimeout, readTimeout) : null;
+        seen = UrlSeenStore.create(websiteInfo.getWebsiteFolder() + "crawl.seen", maxPages * 10L);
+        baseUri = websiteInfo.getCanonicalBaseUri();
+        addUrl(baseUri);
+
+        ExecutorService fetchers = Executors.newFixedThreadPool(concurrency);
+        Semaphore slots = new Semaphore(concurrency);
+        long nextRetry = System.nanoTime() + PARKED_RETRY_NANOS;
+        try {
+            while (failure.get() == null)
+            {
+                if (!parked.isEmpty() && System.nanoTime() - nextRetry >= 0)
+                {
+                    retryParked();
+                    nextRetry = System.nanoTime() + PARKED_RETRY_NANOS;
+                }
+                // the pages being fetched count as indexed until they are done, so the crawl never goes past maxPages
+                long pages = progress.getCompleted();
+                if (pages >= maxPages) break;
+                if (pages + inFlight.get() >= maxPages)
+                {
+                    Thread.sleep(10);
+                    continue;
+                }
+                String url = frontier.poll(50, TimeUnit.MILLISECONDS);
+                if (url == null)
+                {
+                    // the pages being fetched add their links before they are done, so nothing more can come
+                    // (while the hosts are not ready, the frontier is not empty, nor are the parked URLs waiting)
+                    if (inFlight.get() == 0 && frontier.isEmpty() && parked.isEmpty()) break;
+                    continue;
+                }
+                slots.acquire();
+                inFlight.incrementAndGet();
+                fetchers.execute(() -> {
+                    try {
+                        fetch(url);
+                    } finally {
+                        frontier.done(url);
+                        inFlight.decrementAndGet();
+                        slots.release();
+                    }
+                });
+            }
+            fetchers.shutdown();
+            fetchers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("The crawl was interrupted");
+        } finally {
+            fetchers.shutdownNow();
+            seen.close();
+        }
+        progress.finish();
+        elapsedMillis = progress.getElapsedMillis();
+
+        if (failure.get() != null) throw failure.get();
+        return DirectIndex.directIndex(websiteInfo, directIndex);
+    }
+
+    // adds the URL (in canonical form) to the frontier, if it was never added before and robots.txt allows it;
+    // returns true if it was added (or parked, see admit)
+    private boolean addUrl(String url) throws IOException
+    {
+        if (!seen.add(UrlSeenStore.fingerprint(url))) return false;
+        return admit(url);
+    }
+
+    // adds a new URL to the frontier if robots.txt allows it. While the robots.txt of its host cannot be fetched,
+    // the URL is parked instead (it is neither allowed nor disallowed yet), and tried again later.
+    private boolean admit(String url)
+    {
+        if (robots != null)
+        {
+            RobotsRules rules = robots.getRules(url);
+            if (rules == RobotsRules.UNAVAILABLE)
+            {
+                if (robots.getFailures(url) >= MAX_ROBOTS_FAILURES)
+                {
+                    unavailable.increment();
+                    return false;
+                }
+                parked.add(url);
+                return true;
+            }
+            if (rules == null || !rules.isAllowed(RobotsCache.getPath(url)))
+            {
+                disallowed.increment();
+                return false;
+            }
+            if (rules.getCrawlDelayMillis() > 0) frontier.setCrawlDelay(url, rules.getCrawlDelayMillis());
+        }
+        frontier.add(url);
+        return true;
+    }
+
+    // tries the parked URLs again: the robots.txt of their hosts is fetched again once its error expires
+    // (see RobotsCache), until then they are parked again
+    private void retryParked()
+    {
+        for (int n = parked.size(); n > 0; --n)
+        {
+            String url = parked.poll();
+            if (url == null) break;
+            admit(url);
+        }
+    }
+
+    // fetches one page; the pages which cannot be fetched are counted as errors, and the crawl goes on
+    private void fetch(String url)
+    {
+        Integer hops = redirects.remove(url);
+        byte[] page;
+        String charset;
+        String robotsHeader;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setRequestProperty("User-Agent", userAgent);
+            connection.setRequestProperty("Accept", "text/html");
+            // the redirections are followed by the crawler: HttpURLConnection does not follow those from http to https,
+            // and their targets must go through the checks of the other links (website, seen, robots.txt, politeness)
+            connection.setInstanceFollowRedirects(false);
+
+            int status = connection.getResponseCode();
+            if (status >= 300 && status < 400 && status != HttpURLConnection.HTTP_NOT_MODIFIED)
+            {
+                String location = connection.getHeaderField("Location");
+                connection.disconnect();
+                int count = (hops != null) ? hops + 1 : 1;
+                if (location == null || count > MAX_REDIRECTS)
+                {
+                    errors.increment();
+                    return;
+                }
+                redirect(url, new URL(new URL(url), location).toString(), count);
+                return;
+            }
+            String contentType = connection.getContentType();
+            if (status != HttpURLConnection.HTTP_OK || contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("text/html")
+                    || connection.getContentLengthLong() > maxPageBytes)
+            {
+                // the body is not downloaded: the connection is closed instead of being reused
+                connection.disconnect();
+                if (status != HttpURLConnection.HTTP_OK) errors.increment();
+                else skipped.increment();
+                return;
+            }
+            try (InputStream input = connection.getInputStream()) {
+                page = readAll(input, maxPageBytes);
+                if (page == null) connection.disconnect(); // larger than announced: the rest is not downloaded
+            }
+            if (page == null)
+            {
+                skipped.increment();
+                return;
+            }
+            charset = charset(contentType);
+            robotsHeader = connection.getHeaderField("X-Robots-Tag");
+        } catch (IOException e) {
+            errors.increment();
+            return;
+        }
+        bytes.add(page.length);
+
+        try {
+            File file = localFile(url);
+            if (file == null) return;
+
+            Document doc = Jsoup.parse(new ByteArrayInputStream(page), charset, url);
+            String directives = websiteInfo.getRobots(doc) + "," + (robotsHeader != null ? robotsHeader : "");
+            boolean index = !followRobots || !(hasDirective(directives, "noindex") || hasDirective(directives, "none"));
+            boolean follow = !followRobots || !(hasDirective(directives, "nofollow") || hasDirective(directives, "none"));
+
+            if (index)
+            {
+                file.getParentFile().mkdirs();
+                Files.write(file.toPath(), page);
+                directIndex.put(file.getAbsolutePath(), DirectIndex.indexDocument(websiteInfo, file, doc));
+            }
+            if (follow)
+            {
+                for (String link : websiteInfo.getInternalLinks(doc, baseUri))
+                {
+                    addUrl(link);
+                }
+            }
+            if (!index)
+            {
+                notIndexed.increment();
+                return;
+            }
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+            return;
+        }
+        progress.increment();
+    }
+
+    // adds the target of a redirection to the frontier, like a link (so it is fetched once, if the website and robots.txt
+    // allow it). A redirection of the base URI out of it (e.g. from http://example.com/ to https://www.example.com/)
+    // means that the website moved: the crawl goes on under the new base URI.
+    private void redirect(String url, String location, int hops)
+    {
+        String target = WebsiteInfo.getUrlNormalizer().normalize(location);
+        if (target == null) return;
+        if (url.equals(baseUri) && !target.startsWith(baseUri))
+        {
+            int queryPosition = target.indexOf('?');
+            String path = (queryPosition != -1) ? target.substring(0, queryPosition) : target;
+            baseUri = path.substring(0, path.lastIndexOf('/') + 1);
+        }
+        if (!target.startsWith(baseUri)) return;
+        redirects.put(target, hops);
+        try {
+            if (!addUrl(target)) redirects.remove(target);
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+        }
+    }
+
+    // returns the file in which the page is saved: the path of its URL under the
+    // website folder, index.html for a folder, so the saved pages can also be
+    // indexed again from the folder. Every other page gets a name of its own ending
+    // with .html: the 64-bit fingerprint of its URL is added to the path, so "/a",
+    // "/a.html", "/a?b" and "/index.html" (next to "/") do not overwrite each other.
+    // Returns null for a URL outside the website.
+    File localFile(String url)
+    {
+        String baseUri = this.baseUri;
+        if (!url.startsWith(baseUri)) return null;
+        String path = url.substring(baseUri.length());
+        boolean hasQuery = false;
+        int queryPosition = path.indexOf('?');
+        if (queryPosition != -1)
+        {
+            hasQuery = true;
+            path = path.substring(0, queryPosition);
+        }
+        while (path.startsWith("/")) path = path.substring(1);
+        if (("/" + path + "/").contains("/../")) return null;
+
+        boolean folder = path.isEmpty() || path.endsWith("/");
+        if (folder) path += "index.html";
+        String lowerCasePath = path.toLowerCase(Locale.ROOT);
+        boolean html = lowerCasePath.endsWith(".html") || lowerCasePath.endsWith(".htm");
+        boolean index = lowerCasePath.equals("index.html") || lowerCasePath.endsWith("/index.html");
+        if (hasQuery || !html || (index && !folder))
+        {
+            path += "_" + Long.toHexString(UrlSeenStore.fingerprint(url)) + ".html";
+        }
+        return new File(websiteInfo.getWebsiteFolder(), path);
+    }
+
+    // true if the list of robots directives (e.g. "noindex, nofollow") contains the directive
+    private static boolean hasDirective(String directives, String directive)
+    {
+        for (String token : directives.split("[,\\s]+"))
+        {
+            if (token.equalsIgnoreCase(directive)) return true;
+        }
+        return false;
+    }
+
+    // the charset given by the Content-Type header, or null (then the page itself is looked at)
+    private static String charset(String contentType)
+    {
+        for (String parameter : contentType.split(";"))
+        {
+            parameter = parameter.trim();
+            if (parameter.toLowerCase(Locale.ROOT).startsWith("charset="))
+            {
+                return parameter.substring("charset=".length()).replace("\"", "").trim();
+            }
+        }
+        return null;
+    }
+
+    // reads the stream to the end, or returns null as soon as it is longer than maxBytes
+    private static byte[] readAll(InputStream input, int maxBytes) throws IOException
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer)) != -1)
+        {
+            if (output.size() + read > maxBytes) return null;
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    // returns the number of pages fetched and indexed.
+    public long getPagesFetched()
+    {
+        return progress.getCompleted();
+    }
+
+    // returns the number of bytes downloaded (the bodies of the HTML pages).
+    public long getBytesFetched()
+    {
+        return bytes.sum();
+    }
+
+    // returns the number of URLs which could not be fetched (connection errors, HTTP errors).
+    public long getErrors()
+    {
+        return errors.sum();
+    }
+
+    // returns the number of responses skipped, because they are not HTML or are larger than the maximum size.
+    public long getSkipped()
+    {
+        return skipped.sum();
+    }
+
+    // returns the number of URLs which robots.txt does not allow.
+    public long getDisallowed()
+    {
+        return disallowed.sum();
+    }
+
+    // returns the number of URLs given up, because the robots.txt of their host could not be fetched
+    // (server or network errors, after RobotsCache tried MAX_ROBOTS_FAILURES times).
+    public long getUnavailable()
+    {
+        return unavailable.sum();
+    }
+
+    // returns the number of pages fetched but not indexed, because of a "noindex" directive.
+    public long getNotIndexed()
+    {
+        return notIndexed.sum();
+    }
+
+    public double getPagesPerSecond()
+    {
+        return getPagesFetched() * 1000.0 / Math.max(getElapsedMillis(), 1);
+    }
+
+    public double getBytesPerSecond()
+    {
+        return getBytesFetched() * 1000.0 / Math.max(getElapsedMillis(), 1);
+    }
+
+    // returns the milliseconds since the crawl started, or its duration once it is over.
+    public long getElapsedMillis()
+    {
+        return (elapsedMillis > 0) ? elapsedMillis : progress.getElapsedMillis();
+    }
+}
@@ -0,0 +1,226 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// crawls a fixture website served by an embedded HTTP server (the one of the
+// JDK) and checks the counts of the crawl: pages indexed, errors, responses
+// skipped, "noindex" pages, URLs disallowed by robots.txt, and the files saved.
+// The website has a base URI which moved (redirection), a robots.txt reached
+// through a redirection, pages "/a" and "/a.html", queries, a 404, a chain of
+// redirections too long, a loop of redirections, a file which is not HTML,
+// pages too large (with and without Content-Length), "noindex" and "nofollow"
+// pages. Then the same website is crawled while its robots.txt fails at first,
+// and with a maximum number of pages.
+// Usage: LiveCrawlerCheck (exits with 1 if a check fails)
+class LiveCrawlerCheck {
+    private static final int MAX_PAGE_SIZE = 100000;
+
+    private static final Map<String, String> REDIRECTIONS = new HashMap<>();
+    private static final Map<String, String> PAGES = new HashMap<>();
+    static
+    {
+        REDIRECTIONS.put("/old/", "/site/");
+        REDIRECTIONS.put("/robots.txt", "/robots-moved.txt");
+        REDIRECTIONS.put("/site/moved", "page.html"); // to a page already linked
+        REDIRECTIONS.put("/site/loop1", "loop2");
+        REDIRECTIONS.put("/site/loop2", "loop1");
+        REDIRECTIONS.put("/site/away", "http://example.invalid/"); // out of the website
+        for (int i = 0; i < 6; ++i)
+        {
+            REDIRECTIONS.put("/site/chain" + i, "chain" + (i + 1)); // chain0 -> ... -> chain6: one redirection too many
+        }
+
+        PAGES.put("/site/", "<a href=a>a</a> <a href=a.html>a.html</a> <a href=page.html>page</a> <a href=index.html>index</a>"
+                + " <a href=missing.html>missing</a> <a href=data.bin>data</a> <a href=big.html>big</a> <a href=chunked.html>chunked</a>"
+                + " <a href=noindex.html>noindex</a> <a href=nofollow.html>nofollow</a> <a href=moved>moved</a> <a href=loop1>loop</a>"
+                + " <a href=away>away</a> <a href=chain0>chain</a> <a href='q?x=1'>q1</a> <a href='q?x=2&amp;sessionid=7'>q2</a>"
+                + " <a href=private/secret.html>secret</a> <a href=../outside.html>outside</a> <a href=http://example.invalid/>other</a>");
+        PAGES.put("/site/a", "extensionless page");
+        PAGES.put("/site/a.html", "page with an extension");
+        PAGES.put("/site/page.html", "ordinary page <a href=/site/>home</a>");
+        PAGES.put("/site/index.html", "an index.html next to the folder");
+        PAGES.put("/site/noindex.html", "<meta name=robots content=noindex> hidden words <a href=fromnoindex.html>next</a>");
+        PAGES.put("/site/fromnoindex.html", "linked from a noindex page");
+        PAGES.put("/site/nofollow.html", "<meta name=robots content=nofollow> <a href=hidden.html>hidden</a>");
+        PAGES.put("/site/hidden.html", "only linked from a nofollow page");
+        PAGES.put("/site/q", "query page");
+        PAGES.put("/site/private/secret.html", "disallowed by robots.txt");
+        PAGES.put("/outside.html", "outside the base URI");
+    }
+
+    private static final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private static final AtomicInteger robotsFailures = new AtomicInteger(); // the next requests of robots.txt which fail
+    private static int failures = 0;
+
+    // the fixture website
+    private static void handle(HttpExchange exchange) throws IOException
+    {
+        String path = exchange.getRequestURI().getPath();
+        requests.computeIfAbsent(path, key -> new AtomicInteger()).incrementAndGet();
+        try {
+            if (path.equals("/robots.txt") && robotsFailures.getAndDecrement() > 0)
+            {
+                exchange.sendResponseHeaders(503, -1);
+            }
+            else if (REDIRECTIONS.containsKey(path))
+            {
+                exchange.getResponseHeaders().add("Location", REDIRECTIONS.get(path));
+                exchange.sendResponseHeaders(path.equals("/old/") ? 301 : 302, -1);
+            }
+            else if (path.equals("/robots-moved.txt"))
+            {
+                send(exchange, "text/plain", "User-agent: *\nDisallow: /site/private/\n");
+            }
+            else if (path.equals("/site/data.bin"))
+            {
+                send(exchange, "application/octet-stream", "binary data");
+            }
+            else if (path.equals("/site/big.html") || path.equals("/site/chunked.html"))
+            {
+                // larger than the maximum size: announced by Content-Length, or discovered while reading
+                byte[] block = new byte[8192];
+                Arrays.fill(block, (byte) 'x');
+                int blocks = 2 * MAX_PAGE_SIZE / block.length;
+                exchange.getResponseHeaders().add("Content-Type", "text/html");
+                exchange.sendResponseHeaders(200, path.equals("/site/big.html") ? (long) blocks * block.length : 0);
+                OutputStream output = exchange.getResponseBody();
+                for (int i = 0; i < blocks; ++i)
+                {
+                    output.write(block);
+                }
+            }
+            else if (PAGES.containsKey(path))
+            {
+                send(exchange, "text/html; charset=UTF-8", "<html><head><title>" + path + "</title></head><body>"
+                        + PAGES.get(path) + "</body></html>");
+            }
+            else
+            {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        } catch (IOException e) {
+            // the crawler closed the connection (a response too large)
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void send(HttpExchange exchange, String contentType, String body) throws IOException
+    {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void check(String what, long actual, long expected)
+    {
+        boolean ok = (actual == expected);
+        if (!ok) ++failures;
+        System.out.println((ok ? "ok     " : "FAILED ") + what + ": " + actual + (ok ? "" : " (expected " + expected + ")"));
+    }
+
+    private static int requests(String path)
+    {
+        AtomicInteger count = requests.get(path);
+        return (count != null) ? count.get() : 0;
+    }
+
+    // crawls the website from http://.../old/ into a new folder, with its robots.txt failing "robotsFailures" times first
+    private static LiveCrawler crawl(String baseUri, int maxPages, int robotsFailures, List<String> files) throws IOException
+    {
+        requests.clear();
+        LiveCrawlerCheck.robotsFailures.set(robotsFailures);
+        File folder = Files.createTempDirectory("crawl").toFile();
+        LiveCrawler crawler = new LiveCrawler(new WebsiteInfo(folder.getPath() + File.separator, baseUri), 4)
+                .setMaxPages(maxPages).setMaxPageSize(MAX_PAGE_SIZE).setPoliteness(1000, 4).setRobots(true, 200);
+        HashMap<Integer, HashMap<String, Integer>> directIndex = crawler.crawl();
+        check("documents in the direct index", directIndex.size(), crawler.getPagesFetched());
+
+        for (File file : folder.listFiles()) // the pages of the base URI where the website moved
+        {
+            if (file.getName().endsWith(".html") || file.getName().endsWith(".htm")) files.add(file.getName());
+        }
+        Collections.sort(files);
+        deleteAll(folder);
+        return crawler;
+    }
+
+    private static void deleteAll(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null)
+        {
+            for (File child : children)
+            {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", LiveCrawlerCheck::handle);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        server.setExecutor(executor);
+        server.start();
+        String baseUri = "http://127.0.0.1:" + server.getAddress().getPort() + "/old/";
+        try {
+            System.out.println("Whole website:");
+            List<String> files = new ArrayList<>();
+            LiveCrawler crawler = crawl(baseUri, 1000, 0, files);
+            // /site/, a, a.html, page.html, index.html, fromnoindex.html, nofollow.html, q?x=1, q?x=2
+            check("pages", crawler.getPagesFetched(), 9);
+            check("errors (404, too many redirections)", crawler.getErrors(), 2);
+            check("skipped (not HTML, too large)", crawler.getSkipped(), 3);
+            check("noindex", crawler.getNotIndexed(), 1);
+            check("disallowed", crawler.getDisallowed(), 1);
+            check("unavailable", crawler.getUnavailable(), 0);
+            check("files saved", files.size(), 9);
+            check("a.html saved", files.contains("a.html") ? 1 : 0, 1);
+            check("a and a.html in different files", files.stream().filter(name -> name.startsWith("a_")).count(), 1);
+            check("requests of page.html (linked and redirected to)", requests("/site/page.html"), 1);
+            check("requests of loop1 (loop of redirections)", requests("/site/loop1"), 1);
+            check("requests of chain6 (after 5 redirections)", requests("/site/chain6"), 0);
+            check("requests of the nofollow link", requests("/site/hidden.html"), 0);
+            check("requests of the disallowed page", requests("/site/private/secret.html"), 0);
+            check("requests out of the base URI", requests("/outside.html"), 0);
+            System.out.println("Files: " + files);
+
+            System.out.println("robots.txt failing twice:");
+            crawler = crawl(baseUri, 1000, 2, new ArrayList<>());
+            check("pages", crawler.getPagesFetched(), 9);
+            check("disallowed", crawler.getDisallowed(), 1);
+            check("unavailable", crawler.getUnavailable(), 0);
+
+            System.out.println("robots.txt always failing:");
+            crawler = crawl(baseUri, 1000, Integer.MAX_VALUE, new ArrayList<>());
+            check("pages", crawler.getPagesFetched(), 0);
+            check("unavailable (the base URI)", crawler.getUnavailable(), 1);
+            check("requests of pages", requests("/old/"), 0);
+
+            System.out.println("At most 3 pages:");
+            crawler = crawl(baseUri, 3, 0, new ArrayList<>());
+            check("pages", crawler.getPagesFetched(), 3);
+        } finally {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+
+        System.out.println((failures == 0) ? "All the checks passed" : failures + " check(s) failed");
+        if (failures > 0) System.exit(1);
+    }
+}
@@ -86,6 +86,31 @@ class PorterStemmer {
         for (int c = 0; c < wLen; c++) b[i++] = w[c];
     }
 
+    /**
+     * Adds the wLen characters found in w starting at offset. The stemmer keeps
+     * its buffer between words, so an instance can be reused for any number of
+     * words without allocating.
+     */
+
+    public void add(char[] w, int offset, int wLen) {
+        if (i + wLen >= b.length) {
+            char[] new_b = new char[i + wLen + INC];
+            System.arraycopy(b, 0, new_b, 0, i);
+            b = new_b;
+        }
+        System.arraycopy(w, offset, b, i, wLen);
+        i += wLen;
+    }
+
+    /**
+     * Discards the characters added since the last call of stem().
+     */
+
+    public void reset() {
+        i = 0;
+        i_end = 0;
+    }
+
     /**
      * After a word has been stemmed, it can be retrieved by toString(),
      * or a reference to the internal buffer can be retrieved by getResultBuffer
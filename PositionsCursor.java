@@ -0,0 +1,64 @@
+import java.nio.ByteBuffer;
+
+// reads the positions of a word in the binary index, for the documents asked
+// for, in increasing order of the document ids.
+// The positions of a word follow its (document, number of occurrences) pairs,
+// so the pairs are decoded first; the positions of the documents which are not
+// asked for are skipped without being kept, and the positions are only read up
+// to the last document asked for.
+class PositionsCursor {
+    private final ByteBuffer buffer;
+    private final int[] documents;
+    private final int[] counts;
+
+    private int index = 0; // the posting whose positions start at position
+    private int position;  // the position of the next positions in the buffer
+
+    PositionsCursor(ByteBuffer buffer, int postingsOffset, int documentFrequency)
+    {
+        this.buffer = buffer.duplicate();
+        this.documents = new int[documentFrequency];
+        this.counts = new int[documentFrequency];
+        this.buffer.position(postingsOffset + 4 + 8 * buffer.getInt(postingsOffset)); // after the skips
+        int document = 0;
+        for (int p = 0; p < documentFrequency; p++)
+        {
+            document += VarInt.read(this.buffer);
+            documents[p] = document;
+            counts[p] = VarInt.read(this.buffer);
+        }
+        this.position = this.buffer.position(); // the positions start after the pairs
+    }
+
+    // returns the positions (increasing) of the word in the document, or null if
+    // the word does not appear in it. The documents must be asked for in
+    // increasing order.
+    public int[] positions(int document)
+    {
+        buffer.position(position);
+        while (index < documents.length && documents[index] < document)
+        {
+            for (int c = counts[index]; c > 0; c--)
+            {
+                VarInt.read(buffer); // the positions of a document that is not asked for
+            }
+            index++;
+        }
+        position = buffer.position();
+        if (index == documents.length || documents[index] != document)
+        {
+            return null;
+        }
+
+        int[] positions = new int[counts[index]];
+        int wordPosition = 0;
+        for (int p = 0; p < positions.length; p++)
+        {
+            wordPosition += VarInt.read(buffer);
+            positions[p] = wordPosition;
+        }
+        index++;
+        position = buffer.position();
+        return positions;
+    }
+}
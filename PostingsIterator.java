@@ -0,0 +1,128 @@
+import java.nio.ByteBuffer;
+
+// goes through the postings of a word in the binary index, in increasing order
+// of the document ids, decoding them only as far as needed.
+// advance uses the skips stored every PostingsWriter.BLOCK_SIZE
+// postings: it gallops (exponential, then binary search) over the skips to the
+// last block that cannot contain the target, so the blocks in between are never
+// decoded.
+class PostingsIterator {
+    public static final int NO_MORE_DOCUMENTS = Integer.MAX_VALUE;
+
+    private final ByteBuffer buffer;
+    private final int skipsStart;
+    private final int numberOfSkips;
+    private final int pairsStart;
+    private final int documentFrequency;
+
+    private int index = 0;    // the number of postings decoded
+    private int position;     // the position of the next pair in the buffer
+    private int document = -1;
+    private int count = 0;
+
+    PostingsIterator(ByteBuffer buffer, int postingsOffset, int documentFrequency)
+    {
+        this.buffer = buffer;
+        this.numberOfSkips = buffer.getInt(postingsOffset);
+        this.skipsStart = postingsOffset + 4;
+        this.pairsStart = skipsStart + 8 * numberOfSkips;
+        this.documentFrequency = documentFrequency;
+        this.position = pairsStart;
+    }
+
+    // returns the current document (-1 before the first call of nextDocument / advance).
+    public int document()
+    {
+        return document;
+    }
+
+    // returns the number of occurrences of the word in the current document.
+    public int count()
+    {
+        return count;
+    }
+
+    // returns the number of documents of the word (the cost of going through all of them).
+    public int cost()
+    {
+        return documentFrequency;
+    }
+
+    // moves to the next document and returns it, or NO_MORE_DOCUMENTS at the end.
+    public int nextDocument()
+    {
+        if (index == documentFrequency)
+        {
+            return document = NO_MORE_DOCUMENTS;
+        }
+        int b = buffer.get(position++);
+        int gap = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7)
+        {
+            b = buffer.get(position++);
+            gap |= (b & 0x7F) << shift;
+        }
+        b = buffer.get(position++);
+        count = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7)
+        {
+            b = buffer.get(position++);
+            count |= (b & 0x7F) << shift;
+        }
+        index++;
+        return document = Math.max(document, 0) + gap;
+    }
+
+    // moves to the first document greater than or equal to the target (which
+    // must be greater than the current document) and returns it, or
+    // NO_MORE_DOCUMENTS if there is none.
+    public int advance(int target)
+    {
+        // skip k leads to the block k + 1; the skips of the blocks already reached are not used
+        int first = index / PostingsWriter.BLOCK_SIZE;
+        if (first < numberOfSkips && skipDocument(first) < target)
+        {
+            // gallop: find a skip whose block may contain the target
+            int low = first, step = 1;
+            int high = first + step;
+            while (high < numberOfSkips && skipDocument(high) < target)
+            {
+                low = high;
+                step *= 2;
+                high = first + step;
+            }
+            high = Math.min(high, numberOfSkips);
+
+            // binary search: the last skip (in [low, high)) whose previous document is below the target
+            while (high - low > 1)
+            {
+                int middle = (low + high) >>> 1;
+                if (skipDocument(middle) < target)
+                {
+                    low = middle;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+
+            document = skipDocument(low);
+            position = pairsStart + buffer.getInt(skipsStart + 8 * low + 4);
+            index = (low + 1) * PostingsWriter.BLOCK_SIZE;
+        }
+
+        int current;
+        do
+        {
+            current = nextDocument();
+        } while (current < target);
+        return current;
+    }
+
+    // the last document before the block of the skip
+    private int skipDocument(int skip)
+    {
+        return buffer.getInt(skipsStart + 8 * skip);
+    }
+}
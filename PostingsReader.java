@@ -0,0 +1,250 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+// reads an indirect index written by PostingsWriter.
+// The dictionary is binary searched in place (through the table of word
+// offsets) and the postings of a word are only decoded when they are asked for.
+// When the file is memory mapped (map), opening the index costs the
+// same regardless of its size: only the pages touched by the queries are read.
+class PostingsReader {
+    // the postings of a word: the ids of the documents (increasing) and the number
+    // of occurrences of the word in each of them.
+    static class Postings
+    {
+        final int[] documents;
+        final int[] counts;
+
+        Postings(int[] documents, int[] counts)
+        {
+            this.documents = documents;
+            this.counts = counts;
+        }
+
+        int size()
+        {
+            return documents.length;
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int numberOfDocuments;
+    private final int wordOffsetsStart;
+    private final int numberOfWords;
+    private final boolean withPositions;
+
+    private PostingsReader(ByteBuffer buffer) throws IOException
+    {
+        this.buffer = buffer;
+        int trailer = buffer.limit() - PostingsWriter.TRAILER_SIZE;
+        if (buffer.limit() < PostingsWriter.HEADER_SIZE + PostingsWriter.TRAILER_SIZE || buffer.getInt(0) != PostingsWriter.MAGIC
+                || buffer.getInt(buffer.limit() - 4) != PostingsWriter.MAGIC)
+        {
+            throw new IOException("Not an index file");
+        }
+        if (buffer.getInt(4) != PostingsWriter.VERSION)
+        {
+            throw new IOException("Unsupported index version " + buffer.getInt(4));
+        }
+        withPositions = (buffer.getInt(8) & PostingsWriter.WITH_POSITIONS) != 0;
+
+        wordOffsetsStart = (int) buffer.getLong(trailer + 8);
+        numberOfDocuments = buffer.getInt(trailer + 16);
+        numberOfWords = buffer.getInt(trailer + 20);
+    }
+
+    // reads the whole file in memory.
+    public static PostingsReader open(String fileName) throws IOException
+    {
+        return new PostingsReader(ByteBuffer.wrap(Files.readAllBytes(Paths.get(fileName))));
+    }
+
+    // maps the file in memory (read only), without reading it.
+    public static PostingsReader map(String fileName) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException("The index file is too large to be mapped: " + fileName);
+            }
+            return new PostingsReader(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getNumberOfDocuments()
+    {
+        return numberOfDocuments;
+    }
+
+    public int getNumberOfWords()
+    {
+        return numberOfWords;
+    }
+
+    // returns true if the index stores the positions of the words (for the phrase and NEAR searches).
+    public boolean hasPositions()
+    {
+        return withPositions;
+    }
+
+    // returns the word with the given index in the (sorted) dictionary.
+    public String getWord(int index)
+    {
+        return readUTF(new int[]{entryPosition(index)});
+    }
+
+    // returns the index of the word in the dictionary, or -1 if it is not in the index.
+    public int findWord(String word)
+    {
+        int low = 0, high = numberOfWords - 1;
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            int result = getWord(middle).compareTo(word);
+            if (result < 0)
+            {
+                low = middle + 1;
+            }
+            else if (result > 0)
+            {
+                high = middle - 1;
+            }
+            else
+            {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    // returns the number of documents in which the word appears (0 if it is not in the index).
+    public int getDocumentFrequency(String word)
+    {
+        int index = findWord(word);
+        return index < 0 ? 0 : getDocumentFrequency(index);
+    }
+
+    public int getDocumentFrequency(int index)
+    {
+        int position = entryPosition(index);
+        return buffer.getInt(position + 2 + (buffer.getShort(position) & 0xFFFF));
+    }
+
+    // decodes the postings of the word, or returns null if it is not in the index.
+    public Postings getPostings(String word)
+    {
+        int index = findWord(word);
+        return index < 0 ? null : getPostings(index);
+    }
+
+    public Postings getPostings(int index)
+    {
+        int position = entryPosition(index);
+        position += 2 + (buffer.getShort(position) & 0xFFFF);
+        int documentFrequency = buffer.getInt(position);
+        int postingsOffset = (int) buffer.getLong(position + 4);
+
+        int[] documentIds = new int[documentFrequency];
+        int[] counts = new int[documentFrequency];
+        ByteBuffer postings = buffer.duplicate();
+        postings.position(postingsOffset + 4 + 8 * buffer.getInt(postingsOffset)); // after the skips
+        int documentId = 0;
+        for (int p = 0; p < documentFrequency; p++)
+        {
+            documentId += VarInt.read(postings);
+            documentIds[p] = documentId;
+            counts[p] = VarInt.read(postings);
+        }
+        return new Postings(documentIds, counts);
+    }
+
+    // returns an iterator over the postings of the word, or null if it is not in the index.
+    public PostingsIterator iterator(String word)
+    {
+        int index = findWord(word);
+        if (index < 0)
+        {
+            return null;
+        }
+        int position = entryPosition(index);
+        position += 2 + (buffer.getShort(position) & 0xFFFF);
+        return new PostingsIterator(buffer, (int) buffer.getLong(position + 4), buffer.getInt(position));
+    }
+
+    // returns a cursor over the positions of the word in its documents, or null
+    // if it is not in the index.
+    // @throws IllegalStateException if the index does not store positions
+    public PositionsCursor positions(String word)
+    {
+        if (!withPositions)
+        {
+            throw new IllegalStateException("The index does not store the positions of the words");
+        }
+        int index = findWord(word);
+        if (index < 0)
+        {
+            return null;
+        }
+        int position = entryPosition(index);
+        position += 2 + (buffer.getShort(position) & 0xFFFF);
+        return new PositionsCursor(buffer, (int) buffer.getLong(position + 4), buffer.getInt(position));
+    }
+
+    // builds the in-memory form of the index used by the Boolean search.
+    public TreeMap<String, HashMap<Integer, Integer>> toIndirectIndex()
+    {
+        TreeMap<String, HashMap<Integer, Integer>> indirectIndex = new TreeMap<>();
+        for (int w = 0; w < numberOfWords; w++)
+        {
+            Postings postings = getPostings(w);
+            HashMap<Integer, Integer> wordDocuments = new HashMap<>();
+            for (int p = 0; p < postings.size(); p++)
+            {
+                wordDocuments.put(postings.documents[p], postings.counts[p]);
+            }
+            indirectIndex.put(getWord(w), wordDocuments);
+        }
+        return indirectIndex;
+    }
+
+    private int entryPosition(int index)
+    {
+        return (int) buffer.getLong(wordOffsetsStart + 8 * index);
+    }
+
+    // decodes a string written with DataOutput.writeUTF (modified UTF-8) at position[0]
+    private String readUTF(int[] position)
+    {
+        int p = position[0];
+        int length = buffer.getShort(p) & 0xFFFF;
+        p += 2;
+        int end = p + length;
+        char[] chars = new char[length];
+        int count = 0;
+        while (p < end)
+        {
+            int b = buffer.get(p++) & 0xFF;
+            if (b < 0x80)
+            {
+                chars[count++] = (char) b;
+            }
+            else if ((b & 0xE0) == 0xC0)
+            {
+                chars[count++] = (char) (((b & 0x1F) << 6) | (buffer.get(p++) & 0x3F));
+            }
+            else
+            {
+                int b2 = buffer.get(p++) & 0x3F;
+                int b3 = buffer.get(p++) & 0x3F;
+                chars[count++] = (char) (((b & 0x0F) << 12) | (b2 << 6) | b3);
+            }
+        }
+        position[0] = end;
+        return new String(chars, 0, count);
+    }
+}
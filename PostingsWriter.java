@@ -0,0 +1,278 @@
+import com.google.gson.stream.JsonReader;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+// writes an indirect index in the binary postings format read by PostingsReader.
+// Layout of the file:
+// <pre>
+// header:        int MAGIC, int VERSION, int flags (WITH_POSITIONS)
+// postings:      for each word: int number of skips, the skips (int last document before the block,
+// int offset of the block in the pairs), then the (document id gap, number of occurrences) pairs as varints,
+// then, only in an index with positions, for each pair the gaps between the positions of the word as varints
+// dictionary:    for each word, in sorted order: UTF word, int df, long postings offset, int postings length
+// word offsets:  long position of each dictionary entry (so the dictionary can be binary searched in place)
+// trailer:       long dictionary start, long word offsets start, int number of documents, int word count, int MAGIC
+// </pre>
+// The documents are identified by their ids from the DocumentTable.
+// The words must be added in increasing order and the document ids of a word
+// in increasing order, so every document id is stored as the (small) gap from
+// the previous one. Every BLOCK_SIZE postings, a skip records where the next
+// block starts, so a reader can jump over whole blocks when it looks for a
+// document (see PostingsIterator).
+// The positions of the words (for the phrase and NEAR searches) are optional:
+// an index without positions has exactly the same postings as before. In an
+// index with positions, they follow the pairs of the word, so the pairs are
+// decoded first and the positions only for the documents that need them (see
+// PositionsCursor).
+class PostingsWriter implements Closeable {
+    static final int MAGIC = 0x57434958; // "WCIX"
+    static final int VERSION = 4;
+    static final int WITH_POSITIONS = 1; // flag: the postings are followed by the positions
+    static final int HEADER_SIZE = 4 + 4 + 4;
+    static final int BLOCK_SIZE = 128; // the number of postings between two skips
+    static final int TRAILER_SIZE = 8 + 8 + 4 + 4 + 4;
+
+    private static class WordEntry
+    {
+        final String word;
+        final int documentFrequency;
+        final long postingsOffset;
+        final int postingsLength;
+
+        WordEntry(String word, int documentFrequency, long postingsOffset, int postingsLength)
+        {
+            this.word = word;
+            this.documentFrequency = documentFrequency;
+            this.postingsOffset = postingsOffset;
+            this.postingsLength = postingsLength;
+        }
+    }
+
+    private final DataOutputStream output;
+    private final ByteArrayOutputStream entryBuffer = new ByteArrayOutputStream(); // one postings list / entry at a time
+    private final DataOutputStream entryOutput = new DataOutputStream(entryBuffer);
+    private final ByteArrayOutputStream pairsBuffer = new ByteArrayOutputStream(); // the pairs of the current word
+    private final DataOutputStream pairsOutput = new DataOutputStream(pairsBuffer);
+    private final int numberOfDocuments;
+    private final boolean withPositions;
+    private final ArrayList<WordEntry> dictionary = new ArrayList<>();
+    private long position = 0; // the number of bytes written so far
+    private String lastWord = null;
+
+    // creates the file of an index over the documents with the ids 0 .. numberOfDocuments - 1.
+    public PostingsWriter(String fileName, int numberOfDocuments) throws IOException
+    {
+        this(fileName, numberOfDocuments, false);
+    }
+
+    // creates the file of an index which also stores the positions of the words,
+    // if withPositions is true.
+    public PostingsWriter(String fileName, int numberOfDocuments, boolean withPositions) throws IOException
+    {
+        this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+        this.numberOfDocuments = numberOfDocuments;
+        this.withPositions = withPositions;
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(withPositions ? WITH_POSITIONS : 0);
+        position = HEADER_SIZE;
+    }
+
+    // adds the postings of a word: the first "length" document ids (increasing)
+    // and the number of occurrences of the word in each of them.
+    public void addWord(String word, int[] documentIds, int[] counts, int length) throws IOException
+    {
+        if (withPositions)
+        {
+            throw new IllegalArgumentException("The index stores positions, the positions of \"" + word + "\" are missing");
+        }
+        writeWord(word, documentIds, counts, null, length);
+    }
+
+    // adds the postings of a word, together with the positions (increasing) of
+    // the word in each document; positions[p] has counts[p] elements.
+    public void addWord(String word, int[] documentIds, int[] counts, int[][] positions, int length) throws IOException
+    {
+        if (!withPositions)
+        {
+            throw new IllegalArgumentException("The index does not store positions");
+        }
+        writeWord(word, documentIds, counts, positions, length);
+    }
+
+    private void writeWord(String word, int[] documentIds, int[] counts, int[][] positions, int length) throws IOException
+    {
+        if (lastWord != null && lastWord.compareTo(word) >= 0)
+        {
+            throw new IllegalArgumentException("The words must be added in increasing order: \"" + word + "\" after \"" + lastWord + "\"");
+        }
+        lastWord = word;
+
+        pairsBuffer.reset();
+        entryBuffer.reset();
+        int numberOfSkips = (length - 1) / BLOCK_SIZE;
+        entryOutput.writeInt(Math.max(numberOfSkips, 0));
+
+        int previous = 0;
+        for (int p = 0; p < length; p++)
+        {
+            if (documentIds[p] < previous || (p > 0 && documentIds[p] == previous) || documentIds[p] >= numberOfDocuments)
+            {
+                throw new IllegalArgumentException("The documents of \"" + word + "\" are not sorted");
+            }
+            if (p > 0 && p % BLOCK_SIZE == 0)
+            {
+                // the skip to the block which starts here
+                entryOutput.writeInt(previous);
+                entryOutput.writeInt(pairsBuffer.size());
+            }
+            VarInt.write(pairsOutput, documentIds[p] - previous);
+            VarInt.write(pairsOutput, counts[p]);
+            previous = documentIds[p];
+        }
+        pairsBuffer.writeTo(entryOutput);
+
+        if (positions != null)
+        {
+            for (int p = 0; p < length; p++)
+            {
+                if (positions[p].length != counts[p])
+                {
+                    throw new IllegalArgumentException("The positions of \"" + word + "\" do not match its number of occurrences");
+                }
+                int previousPosition = 0;
+                for (int wordPosition : positions[p])
+                {
+                    VarInt.write(entryOutput, wordPosition - previousPosition);
+                    previousPosition = wordPosition;
+                }
+            }
+        }
+
+        dictionary.add(new WordEntry(word, length, position, entryBuffer.size()));
+        flushEntry();
+    }
+
+    // copies the current entry in the file, keeping track of the position
+    private void flushEntry() throws IOException
+    {
+        entryBuffer.writeTo(output);
+        position += entryBuffer.size();
+        entryBuffer.reset();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        long dictionaryStart = position;
+        long[] wordOffsets = new long[dictionary.size()];
+        for (int w = 0; w < dictionary.size(); w++)
+        {
+            WordEntry entry = dictionary.get(w);
+            wordOffsets[w] = position;
+            entryOutput.writeUTF(entry.word);
+            entryOutput.writeInt(entry.documentFrequency);
+            entryOutput.writeLong(entry.postingsOffset);
+            entryOutput.writeInt(entry.postingsLength);
+            flushEntry();
+        }
+
+        long wordOffsetsStart = position;
+        for (long offset : wordOffsets)
+        {
+            output.writeLong(offset);
+        }
+
+        output.writeLong(dictionaryStart);
+        output.writeLong(wordOffsetsStart);
+        output.writeInt(numberOfDocuments);
+        output.writeInt(wordOffsets.length);
+        output.writeInt(MAGIC);
+        output.close();
+    }
+
+    // converts an indirect index from the JSON format (word -> (document -> number
+    // of occurrences), sorted by word) to the binary format. The documents are
+    // given either by their ids or, in older files, by their paths, which are
+    // translated with the table of documents.
+    public static void convert(String jsonFileName, String binaryFileName, DocumentTable documentTable) throws IOException
+    {
+        int[] documentIds = new int[16];
+        int[] counts = new int[16];
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(jsonFileName), "UTF-8"));
+             PostingsWriter writer = new PostingsWriter(binaryFileName, documentTable.size()))
+        {
+            reader.beginObject();
+            while (reader.hasNext())
+            {
+                String word = reader.nextName();
+                int length = 0;
+                reader.beginObject();
+                while (reader.hasNext())
+                {
+                    if (length == documentIds.length)
+                    {
+                        documentIds = Arrays.copyOf(documentIds, length * 2);
+                        counts = Arrays.copyOf(counts, length * 2);
+                    }
+                    documentIds[length] = documentId(reader.nextName(), documentTable);
+                    counts[length] = reader.nextInt();
+                    length++;
+                }
+                reader.endObject();
+
+                sortByDocument(documentIds, counts, length);
+                writer.addWord(word, documentIds, counts, length);
+            }
+            reader.endObject();
+        }
+    }
+
+    private static int documentId(String document, DocumentTable documentTable) throws IOException
+    {
+        try {
+            return Integer.parseInt(document);
+        } catch (NumberFormatException e) {
+            int id = documentTable.getId(document);
+            if (id < 0)
+            {
+                throw new IOException("The document \"" + document + "\" is not in the table of documents");
+            }
+            return id;
+        }
+    }
+
+    // the documents of a word in the JSON file are not necessarily sorted (insertion sort, the lists are usually almost sorted)
+    private static void sortByDocument(int[] documentIds, int[] counts, int length)
+    {
+        for (int p = 1; p < length; p++)
+        {
+            int documentId = documentIds[p], count = counts[p];
+            int q = p - 1;
+            while (q >= 0 && documentIds[q] > documentId)
+            {
+                documentIds[q + 1] = documentIds[q];
+                counts[q + 1] = counts[q];
+                q--;
+            }
+            documentIds[q + 1] = documentId;
+            counts[q + 1] = count;
+        }
+    }
+
+    // Usage: PostingsWriter indirectindex.json indirectindex.bin documents.table
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 3)
+        {
+            System.out.println("Usage: PostingsWriter <index.json> <index.bin> <documents.table>");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        convert(args[0], args[1], DocumentTable.load(args[2]));
+        System.out.println("Converted in " + (System.currentTimeMillis() - start) + " ms ("
+                + new File(args[0]).length() + " -> " + new File(args[1]).length() + " bytes)");
+    }
+}
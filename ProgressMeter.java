@@ -0,0 +1,110 @@
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// measures the progress of a long task over a known number of items: the
+// number of items done, the throughput (items per second) and the estimated
+// time left. The items can be counted from several threads at once.
+// The progress can also be displayed on the console as a progress bar, redrawn
+// on the same line at most a few times per second.
+class ProgressMeter {
+    private static final long REDRAW_INTERVAL = 200; // milliseconds between two redraws of the progress bar
+
+    private final String unit;
+    private final long total;
+    private final long startTime = System.currentTimeMillis();
+    private final LongAdder completed = new LongAdder();
+    private volatile boolean display = false;
+    private long lastDraw = 0;
+
+    // creates a meter for "total" items, called "unit" in the display (e.g. "documents").
+    public ProgressMeter(String unit, long total)
+    {
+        this.unit = unit;
+        this.total = total;
+    }
+
+    // displays the progress bar on the console while the items are counted.
+    public ProgressMeter display()
+    {
+        display = true;
+        return this;
+    }
+
+    // counts one more item done.
+    public void increment()
+    {
+        completed.increment();
+        if (display) draw(false);
+    }
+
+    public long getCompleted()
+    {
+        return completed.sum();
+    }
+
+    public long getTotal()
+    {
+        return total;
+    }
+
+    // returns the milliseconds since the meter was created.
+    public long getElapsedMillis()
+    {
+        return System.currentTimeMillis() - startTime;
+    }
+
+    // returns the number of items done per second.
+    public double getRate()
+    {
+        return getCompleted() * 1000.0 / Math.max(getElapsedMillis(), 1);
+    }
+
+    // returns the estimated milliseconds left, or -1 while nothing is done.
+    public long getEtaMillis()
+    {
+        long current = getCompleted();
+        if (current == 0) return -1;
+        return (total - current) * getElapsedMillis() / current;
+    }
+
+    // draws the progress bar once more, with the final numbers.
+    public void finish()
+    {
+        if (display)
+        {
+            draw(true);
+            System.out.println();
+        }
+    }
+
+    private synchronized void draw(boolean force)
+    {
+        long now = System.currentTimeMillis();
+        if (!force && now - lastDraw < REDRAW_INTERVAL && getCompleted() < total) return;
+        lastDraw = now;
+        System.out.print('\r' + toString());
+    }
+
+    // returns the progress bar: percent, bar, items done, throughput and estimated time left.
+    @Override
+    public String toString()
+    {
+        long current = getCompleted();
+        int percent = total == 0 ? 100 : (int) (current * 100 / total);
+        long eta = getEtaMillis();
+        String etaHms = eta < 0 ? "N/A" :
+                String.format("%02d:%02d:%02d", TimeUnit.MILLISECONDS.toHours(eta),
+                        TimeUnit.MILLISECONDS.toMinutes(eta) % TimeUnit.HOURS.toMinutes(1),
+                        TimeUnit.MILLISECONDS.toSeconds(eta) % TimeUnit.MINUTES.toSeconds(1));
+
+        StringBuilder string = new StringBuilder(160);
+        string.append(String.format("%3d%% [", percent))
+                .append(String.join("", Collections.nCopies(percent, "=")))
+                .append('>')
+                .append(String.join("", Collections.nCopies(100 - percent, " ")))
+                .append(']')
+                .append(String.format(" %d/%d, %.1f %s/s, Estimated time left: %s", current, total, getRate(), unit, etaHms));
+        return string.toString();
+    }
+}
@@ -0,0 +1,97 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// a node of a Boolean query: a word, a phrase ("a b c", the words one after
+// another), a proximity (a NEAR/k b, at most k words apart), or an operator
+// (AND, OR, NOT) applied to other nodes. Built by QueryParser,
+// reordered by QueryPlanner.
+class QueryNode {
+    enum Type { WORD, PHRASE, NEAR, AND, OR, NOT }
+
+    final Type type;
+    final String word; // for WORD nodes, after the filters (exception / stemming)
+    final List<String> words; // for PHRASE and NEAR nodes, after the filters
+    final int distance; // for NEAR nodes, the maximum distance between the 2 words
+    final List<QueryNode> children;
+    long estimatedSize = -1; // the estimated number of documents of the result, filled in by the planner
+
+    private QueryNode(Type type, String word, List<String> words, int distance, List<QueryNode> children)
+    {
+        this.type = type;
+        this.word = word;
+        this.words = words;
+        this.distance = distance;
+        this.children = children;
+    }
+
+    static QueryNode word(String word)
+    {
+        return new QueryNode(Type.WORD, word, null, 0, new ArrayList<>());
+    }
+
+    static QueryNode phrase(List<String> words)
+    {
+        return new QueryNode(Type.PHRASE, null, words, 0, new ArrayList<>());
+    }
+
+    static QueryNode near(String word1, String word2, int distance)
+    {
+        List<String> words = new ArrayList<>();
+        words.add(word1);
+        words.add(word2);
+        return new QueryNode(Type.NEAR, null, words, distance, new ArrayList<>());
+    }
+
+    static QueryNode operator(Type type, List<QueryNode> children)
+    {
+        return new QueryNode(type, null, null, 0, children);
+    }
+
+    static QueryNode not(QueryNode child)
+    {
+        List<QueryNode> children = new ArrayList<>();
+        children.add(child);
+        return new QueryNode(Type.NOT, null, null, 0, children);
+    }
+
+    // returns true for the nodes that need the positions of the words (PHRASE and NEAR).
+    boolean isPositional()
+    {
+        return type == Type.PHRASE || type == Type.NEAR;
+    }
+
+    // returns the query in a readable form, with the estimated sizes when the node was planned.
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        if (type == Type.WORD)
+        {
+            sb.append(word);
+        }
+        else if (type == Type.PHRASE)
+        {
+            sb.append('"').append(String.join(" ", words)).append('"');
+        }
+        else if (type == Type.NEAR)
+        {
+            sb.append(words.get(0)).append(" NEAR/").append(distance).append(' ').append(words.get(1));
+        }
+        else if (type == Type.NOT)
+        {
+            sb.append("NOT ").append(children.get(0));
+        }
+        else
+        {
+            sb.append('(');
+            for (int c = 0; c < children.size(); c++)
+            {
+                if (c > 0) sb.append(' ').append(type).append(' ');
+                sb.append(children.get(c));
+            }
+            sb.append(')');
+        }
+        if (estimatedSize >= 0) sb.append('[').append(estimatedSize).append(']');
+        return sb.toString();
+    }
+}
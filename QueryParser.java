@@ -0,0 +1,217 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// parses a Boolean query into a tree of QueryNodes.
+// Grammar (the operators are case insensitive, NOT binds tighter than AND, which
+// binds tighter than OR):
+// <pre>
+// or      := and (OR and)*
+// and     := unary ((AND)? unary | NOT unary)*    "a NOT b" means "a AND NOT b", "a b" means "a AND b"
+// unary   := NOT unary | primary
+// primary := '(' or ')' | '"' phrase '"' | word (NEAR/k word)*
+// </pre>
+// The words pass through the same filters as the documents: the exceptions are
+// kept as they are, the stopwords are dropped (together with the operator that
+// joins them to the query) and the other words are stemmed. A phrase is split
+// into words like the text of a document, and its stopwords are dropped too,
+// since the positions of the words in the documents do not count them.
+// "a NEAR/k b" means that a and b are at most k words apart, in any order;
+// "a NEAR/k b NEAR/j c" means "a NEAR/k b AND b NEAR/j c".
+class QueryParser {
+    private static final Pattern NEAR = Pattern.compile("near/(\\d+)", Pattern.CASE_INSENSITIVE);
+
+    private final List<String> tokens = new ArrayList<>();
+    private int position = 0;
+
+    private QueryParser(String query)
+    {
+        StringBuilder token = new StringBuilder();
+        for (int c = 0; c < query.length(); c++)
+        {
+            char ch = query.charAt(c);
+            if (ch == '"')
+            {
+                // a phrase is a single token, which keeps its opening quote
+                if (token.length() > 0) tokens.add(token.toString());
+                token.setLength(0);
+                int end = query.indexOf('"', c + 1);
+                if (end < 0)
+                {
+                    throw new IllegalArgumentException("Missing closing \" in the query");
+                }
+                tokens.add(query.substring(c, end));
+                c = end;
+            }
+            else if (ch == '(' || ch == ')' || Character.isWhitespace(ch))
+            {
+                if (token.length() > 0) tokens.add(token.toString());
+                token.setLength(0);
+                if (!Character.isWhitespace(ch)) tokens.add(String.valueOf(ch));
+            }
+            else
+            {
+                token.append(ch);
+            }
+        }
+        if (token.length() > 0) tokens.add(token.toString());
+    }
+
+    // returns the tree of the query, or null if nothing is left to search (for
+    // example, the query contains only stopwords).
+    // @throws IllegalArgumentException if the query is malformed
+    public static QueryNode parse(String query)
+    {
+        QueryParser parser = new QueryParser(query);
+        QueryNode node = parser.parseOr();
+        if (parser.position < parser.tokens.size())
+        {
+            throw new IllegalArgumentException("Unexpected \"" + parser.tokens.get(parser.position) + "\" in the query");
+        }
+        return node;
+    }
+
+    private QueryNode parseOr()
+    {
+        List<QueryNode> children = new ArrayList<>();
+        add(children, parseAnd());
+        while (isOperator("or"))
+        {
+            position++;
+            add(children, parseAnd());
+        }
+        return combine(QueryNode.Type.OR, children);
+    }
+
+    private QueryNode parseAnd()
+    {
+        List<QueryNode> children = new ArrayList<>();
+        add(children, parseUnary());
+        while (position < tokens.size() && !isOperator("or") && !tokens.get(position).equals(")"))
+        {
+            if (isOperator("and"))
+            {
+                position++;
+                add(children, parseUnary());
+            }
+            else if (isOperator("not"))
+            {
+                position++;
+                QueryNode negated = parseUnary();
+                if (negated != null) children.add(QueryNode.not(negated));
+            }
+            else
+            {
+                add(children, parseUnary()); // implicit AND
+            }
+        }
+        return combine(QueryNode.Type.AND, children);
+    }
+
+    private QueryNode parseUnary()
+    {
+        if (isOperator("not"))
+        {
+            position++;
+            QueryNode negated = parseUnary();
+            return negated == null ? null : QueryNode.not(negated);
+        }
+        return parsePrimary();
+    }
+
+    private QueryNode parsePrimary()
+    {
+        if (position == tokens.size())
+        {
+            throw new IllegalArgumentException("The query ends with an operator");
+        }
+        String token = tokens.get(position++);
+        if (token.equals("("))
+        {
+            QueryNode node = parseOr();
+            if (position == tokens.size() || !tokens.get(position).equals(")"))
+            {
+                throw new IllegalArgumentException("Missing \")\" in the query");
+            }
+            position++;
+            return node;
+        }
+        if (token.equals(")") || token.equalsIgnoreCase("and") || token.equalsIgnoreCase("or") || NEAR.matcher(token).matches())
+        {
+            throw new IllegalArgumentException("Unexpected \"" + token + "\" in the query");
+        }
+        if (token.startsWith("\""))
+        {
+            return parsePhrase(token.substring(1));
+        }
+
+        QueryNode word = filterWord(token);
+        List<QueryNode> proximities = new ArrayList<>();
+        Matcher near;
+        while (position < tokens.size() && (near = NEAR.matcher(tokens.get(position))).matches())
+        {
+            position++;
+            if (position == tokens.size() || tokens.get(position).equals("(") || tokens.get(position).startsWith("\""))
+            {
+                throw new IllegalArgumentException("NEAR must be followed by a word");
+            }
+            QueryNode next = filterWord(tokens.get(position++));
+            if (word != null && next != null)
+            {
+                proximities.add(QueryNode.near(word.word, next.word, Integer.parseInt(near.group(1))));
+            }
+            word = (next != null) ? next : word; // a stopword is skipped
+        }
+        if (proximities.isEmpty())
+        {
+            return word;
+        }
+        return combine(QueryNode.Type.AND, proximities);
+    }
+
+    // the words of a phrase, split and filtered like the text of a document
+    private static QueryNode parsePhrase(String phrase)
+    {
+        List<String> words = new ArrayList<>();
+        for (String token : Tokenizer.split(phrase))
+        {
+            QueryNode word = filterWord(token);
+            if (word != null) words.add(word.word);
+        }
+        if (words.isEmpty()) return null;
+        if (words.size() == 1) return QueryNode.word(words.get(0));
+        return QueryNode.phrase(words);
+    }
+
+    // the same 3 filters as for the documents
+    private static QueryNode filterWord(String word)
+    {
+        if (ExceptionList.filter.contains(word))
+        {
+            return QueryNode.word(word);
+        }
+        if (StopWordList.filter.contains(word))
+        {
+            return null;
+        }
+        return QueryNode.word(StemCache.shared.stem(word));
+    }
+
+    private boolean isOperator(String operator)
+    {
+        return position < tokens.size() && tokens.get(position).equalsIgnoreCase(operator);
+    }
+
+    private static void add(List<QueryNode> children, QueryNode child)
+    {
+        if (child != null) children.add(child);
+    }
+
+    private static QueryNode combine(QueryNode.Type type, List<QueryNode> children)
+    {
+        if (children.isEmpty()) return null;
+        if (children.size() == 1) return children.get(0);
+        return QueryNode.operator(type, children);
+    }
+}
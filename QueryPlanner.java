@@ -0,0 +1,85 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+// rewrites a parsed Boolean query so that it is cheap to evaluate.
+// Nested operators of the same kind are flattened ("(a AND b) AND c" becomes
+// one AND of 3 words), the size of every node is estimated from the document
+// frequencies of the words, and the operands of each AND are sorted by
+// increasing estimated size, with the negated operands (NOT x) moved to the
+// end. The evaluation then starts with the smallest set, so the intermediate
+// results stay as small as possible, and every NOT is applied as an AND NOT on
+// the (already small) result instead of complementing a set.
+class QueryPlanner {
+    private QueryPlanner()
+    {
+    }
+
+    // plans the query; the documentFrequency function gives the number of
+    // documents in which a (filtered) word appears.
+    public static QueryNode plan(QueryNode node, ToIntFunction<String> documentFrequency, int numberOfDocuments)
+    {
+        switch (node.type)
+        {
+            case WORD:
+                node.estimatedSize = documentFrequency.applyAsInt(node.word);
+                return node;
+            case PHRASE:
+            case NEAR:
+            {
+                // at most the documents of the rarest word (the positions are checked only when it is evaluated)
+                long size = numberOfDocuments;
+                for (String word : node.words) size = Math.min(size, documentFrequency.applyAsInt(word));
+                node.estimatedSize = size;
+                return node;
+            }
+            case NOT:
+            {
+                QueryNode child = plan(node.children.get(0), documentFrequency, numberOfDocuments);
+                if (child.type == QueryNode.Type.NOT)
+                {
+                    return child.children.get(0); // NOT NOT x = x
+                }
+                QueryNode planned = QueryNode.not(child);
+                planned.estimatedSize = Math.max(0, numberOfDocuments - child.estimatedSize);
+                return planned;
+            }
+            default:
+            {
+                List<QueryNode> children = new ArrayList<>();
+                for (QueryNode child : node.children)
+                {
+                    QueryNode planned = plan(child, documentFrequency, numberOfDocuments);
+                    if (planned.type == node.type)
+                    {
+                        children.addAll(planned.children); // flatten
+                    }
+                    else
+                    {
+                        children.add(planned);
+                    }
+                }
+
+                QueryNode planned = QueryNode.operator(node.type, children);
+                if (node.type == QueryNode.Type.AND)
+                {
+                    // the positive operands first, from the smallest; then the negated ones, from the one that removes the most documents
+                    children.sort(Comparator.comparingInt((QueryNode child) -> child.type == QueryNode.Type.NOT ? 1 : 0)
+                            .thenComparingLong(child -> child.type == QueryNode.Type.NOT ? -child.children.get(0).estimatedSize : child.estimatedSize));
+                    long size = numberOfDocuments;
+                    for (QueryNode child : children) size = Math.min(size, child.estimatedSize);
+                    planned.estimatedSize = size;
+                }
+                else
+                {
+                    children.sort(Comparator.comparingLong(child -> child.estimatedSize));
+                    long size = 0;
+                    for (QueryNode child : children) size += child.estimatedSize;
+                    planned.estimatedSize = Math.min(size, numberOfDocuments);
+                }
+                return planned;
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// the robots.txt files of the hosts met by the live crawler, each one fetched
+// once and kept for a time to live, then fetched again.
+// A robots.txt which does not exist (or is forbidden, HTTP 4xx, or cannot be
+// reached after 5 redirections) allows everything. When it cannot be fetched
+// (server error HTTP 5xx, network error), the host is considered closed for a
+// shorter time, after which it is tried again.
+// The threads of the crawler share the cache: the rules of a host are fetched by
+// one thread, while the other threads which need them wait for it.
+class RobotsCache {
+    private static final int MAX_SIZE = 512 * 1024; // only the beginning of a larger robots.txt is read
+    private static final int MAX_REDIRECTS = 5;
+
+    // the rules of a host and the time at which they must be fetched again
+    private static class Entry
+    {
+        volatile RobotsRules rules = null;
+        volatile long expires = 0; // System.nanoTime()
+        volatile int failures = 0; // the fetches which failed in a row
+    }
+
+    private final String userAgent;
+    private final long ttlNanos;
+    private final long errorTtlNanos;
+    private int connectTimeout = 10000; // milliseconds
+    private int readTimeout = 30000;    // milliseconds
+    private final ConcurrentHashMap<String, Entry> hosts = new ConcurrentHashMap<>();
+
+    // creates a cache for a crawler with this user agent, which keeps the rules of a host for ttlMillis.
+    public RobotsCache(String userAgent, long ttlMillis)
+    {
+        this.userAgent = userAgent;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.errorTtlNanos = Math.min(ttlNanos, TimeUnit.MINUTES.toNanos(10));
+    }
+
+    public RobotsCache setTimeouts(int connectTimeout, int readTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        return this;
+    }
+
+    // returns the rules of the host of the URL, fetching its robots.txt if it is
+    // not in the cache or is too old; returns null for an invalid URL.
+    // While the robots.txt cannot be fetched, the rules are RobotsRules.UNAVAILABLE.
+    public RobotsRules getRules(String url)
+    {
+        String site = getSite(url);
+        if (site == null) return null;
+        Entry entry = hosts.computeIfAbsent(site, key -> new Entry());
+
+        RobotsRules rules = entry.rules;
+        if (rules != null && System.nanoTime() - entry.expires < 0) return rules;
+        synchronized (entry)
+        {
+            // another thread may have fetched them in the meantime
+            if (entry.rules == null || System.nanoTime() - entry.expires >= 0)
+            {
+                long ttl = ttlNanos;
+                try {
+                    entry.rules = fetch(site + "/robots.txt");
+                    entry.failures = 0;
+                } catch (IOException e) {
+                    entry.rules = RobotsRules.UNAVAILABLE;
+                    entry.failures++;
+                    ttl = errorTtlNanos;
+                }
+                entry.expires = System.nanoTime() + ttl;
+            }
+            return entry.rules;
+        }
+    }
+
+    // returns true if the crawler may fetch the URL (false for an invalid URL).
+    public boolean isAllowed(String url)
+    {
+        RobotsRules rules = getRules(url);
+        return rules != null && rules.isAllowed(getPath(url));
+    }
+
+    // returns the number of times in a row the robots.txt of the host of the URL could not be fetched.
+    public int getFailures(String url)
+    {
+        String site = getSite(url);
+        Entry entry = (site != null) ? hosts.get(site) : null;
+        return (entry != null) ? entry.failures : 0;
+    }
+
+    // returns the scheme and the authority of a URL (the key of its host in the cache), or null for an invalid URL
+    private static String getSite(String url)
+    {
+        URL parsedUrl;
+        try {
+            parsedUrl = new URL(url);
+        } catch (MalformedURLException e) {
+            return null;
+        }
+        if (parsedUrl.getAuthority() == null) return null;
+        return parsedUrl.getProtocol().toLowerCase(Locale.ROOT) + "://" + parsedUrl.getAuthority().toLowerCase(Locale.ROOT);
+    }
+
+    // returns the path and the query of a URL, as matched by the rules ("/" for an empty path).
+    static String getPath(String url)
+    {
+        int start = url.indexOf("://");
+        start = (start == -1) ? 0 : url.indexOf('/', start + 3);
+        if (start == -1) return "/";
+        int end = url.indexOf('#', start);
+        return url.substring(start, (end == -1) ? url.length() : end);
+    }
+
+    // follows the redirections (at most MAX_REDIRECTS in a row, as RFC 9309 asks, even to another host: the rules
+    // still apply to the host of robotsUrl); a robots.txt which cannot be reached through them is unavailable
+    private RobotsRules fetch(String robotsUrl) throws IOException
+    {
+        URL url = new URL(robotsUrl);
+        for (int redirects = 0; ; ++redirects)
+        {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+            connection.setRequestProperty("User-Agent", userAgent);
+            connection.setInstanceFollowRedirects(false); // HttpURLConnection does not follow those from http to https
+
+            int status = connection.getResponseCode();
+            if (status >= 300 && status < 400 && status != HttpURLConnection.HTTP_NOT_MODIFIED)
+            {
+                String location = connection.getHeaderField("Location");
+                connection.disconnect();
+                if (location == null || redirects == MAX_REDIRECTS) return RobotsRules.ALLOW_ALL;
+                url = new URL(url, location);
+                continue;
+            }
+            if (status >= 500)
+            {
+                connection.disconnect();
+                throw new IOException("HTTP " + status + " for " + url);
+            }
+            if (status < 200 || status >= 300) // 4xx: unavailable
+            {
+                InputStream error = connection.getErrorStream();
+                if (error != null) error.close();
+                return RobotsRules.ALLOW_ALL;
+            }
+            try (InputStream input = connection.getInputStream()) {
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while (output.size() < MAX_SIZE && (read = input.read(buffer)) != -1) output.write(buffer, 0, read);
+                return RobotsRules.parse(new String(output.toByteArray(), StandardCharsets.UTF_8), userAgent);
+            }
+        }
+    }
+}
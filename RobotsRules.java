@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// the rules of a robots.txt file which apply to one crawler: the Allow and
+// Disallow paths of the group of its user agent (or of the group "*"), and the
+// Crawl-delay.
+// As in the Robots Exclusion Protocol (RFC 9309), the rule with the longest path
+// which matches the URL decides, Allow winning over Disallow for the same length,
+// and a URL which matches no rule is allowed. The paths without wildcards are
+// compiled into a trie, so checking a URL walks its path once, whatever the
+// number of rules; only the few paths with "*" or "$" are matched one by one.
+class RobotsRules {
+    private static final byte NONE = 0, DISALLOW = 1, ALLOW = 2;
+
+    // the rules of a website without robots.txt: everything is allowed.
+    static final RobotsRules ALLOW_ALL = new RobotsRules(new ArrayList<>(), new ArrayList<>(), 0);
+
+    // the rules used while the robots.txt of a website cannot be fetched (server or network error): nothing is
+    // allowed for now, the URLs wait until it is fetched again.
+    static final RobotsRules UNAVAILABLE = new RobotsRules(new ArrayList<>(), new ArrayList<>(Arrays.asList("/")), 0);
+
+    // a node of the trie of the paths: its children are sorted by character
+    private static class Node
+    {
+        char[] characters = new char[0];
+        Node[] children = new Node[0];
+        byte rule = NONE;
+
+        Node child(char c)
+        {
+            int i = Arrays.binarySearch(characters, c);
+            return (i >= 0) ? children[i] : null;
+        }
+
+        Node addChild(char c)
+        {
+            int i = Arrays.binarySearch(characters, c);
+            if (i >= 0) return children[i];
+            i = -i - 1;
+            char[] newCharacters = new char[characters.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(characters, 0, newCharacters, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            newCharacters[i] = c;
+            newChildren[i] = new Node();
+            System.arraycopy(characters, i, newCharacters, i + 1, characters.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, children.length - i);
+            characters = newCharacters;
+            children = newChildren;
+            return newChildren[i];
+        }
+    }
+
+    private final Node root = new Node();
+    private final List<String> patterns = new ArrayList<>();     // the paths with wildcards
+    private final List<Boolean> patternAllows = new ArrayList<>();
+    private final long crawlDelayMillis;
+
+    private RobotsRules(List<String> allows, List<String> disallows, long crawlDelayMillis)
+    {
+        for (String path : disallows) addRule(path, DISALLOW);
+        for (String path : allows) addRule(path, ALLOW);
+        this.crawlDelayMillis = crawlDelayMillis;
+    }
+
+    private void addRule(String path, byte rule)
+    {
+        if (path.isEmpty()) return; // "Disallow:" with no path allows everything
+        if (path.indexOf('*') != -1 || path.endsWith("$"))
+        {
+            patterns.add(path);
+            patternAllows.add(rule == ALLOW);
+            return;
+        }
+        Node node = root;
+        for (int i = 0; i < path.length(); i++) node = node.addChild(path.charAt(i));
+        if (node.rule != ALLOW) node.rule = rule; // Allow wins for the same path
+    }
+
+    // parses a robots.txt file and keeps the rules of the given user agent (its
+    // product token, e.g. "WebCrawler"): the groups whose User-agent is this
+    // token, in any case (a version, as in "WebCrawler/1.0", is ignored), or else
+    // the groups "*". An empty User-agent matches no crawler.
+    static RobotsRules parse(String robotsTxt, String userAgent)
+    {
+        String agent = productToken(userAgent);
+
+        // the rules of each user agent: the lines "User-agent" which follow each other open the same group
+        Map<String, List<String[]>> groups = new HashMap<>();
+        List<List<String[]>> currentGroups = new ArrayList<>();
+        boolean inAgents = false;
+        for (String line : robotsTxt.split("\r\n|\r|\n"))
+        {
+            int comment = line.indexOf('#');
+            if (comment != -1) line = line.substring(0, comment);
+            int colon = line.indexOf(':');
+            if (colon == -1) continue;
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            if (field.equals("user-agent"))
+            {
+                if (!inAgents) currentGroups = new ArrayList<>();
+                inAgents = true;
+                String groupAgent = value.equals("*") ? "*" : productToken(value);
+                List<String[]> group = groups.get(groupAgent);
+                if (group == null) groups.put(groupAgent, group = new ArrayList<>());
+                currentGroups.add(group);
+            }
+            else if (field.equals("allow") || field.equals("disallow") || field.equals("crawl-delay"))
+            {
+                inAgents = false;
+                for (List<String[]> group : currentGroups) group.add(new String[]{field, value});
+            }
+        }
+
+        List<String[]> rules = agent.isEmpty() ? null : groups.get(agent);
+        if (rules == null) rules = groups.get("*");
+        if (rules == null) return ALLOW_ALL;
+
+        List<String> allows = new ArrayList<>();
+        List<String> disallows = new ArrayList<>();
+        long crawlDelayMillis = 0;
+        for (String[] rule : rules)
+        {
+            if (rule[0].equals("allow"))
+            {
+                allows.add(rule[1]);
+            }
+            else if (rule[0].equals("disallow"))
+            {
+                disallows.add(rule[1]);
+            }
+            else
+            {
+                try {
+                    crawlDelayMillis = Math.round(Double.parseDouble(rule[1]) * 1000);
+                } catch (NumberFormatException e) {
+                    // an invalid delay is ignored
+                }
+            }
+        }
+        return new RobotsRules(allows, disallows, Math.max(crawlDelayMillis, 0));
+    }
+
+    // the name of a user agent, in lower case and without its version or comments ("WebCrawler/1.0 (...)" -> "webcrawler")
+    private static String productToken(String userAgent)
+    {
+        int end = 0;
+        while (end < userAgent.length() && "/ \t(;".indexOf(userAgent.charAt(end)) == -1) end++;
+        return userAgent.substring(0, end).toLowerCase(Locale.ROOT);
+    }
+
+    // returns true if the crawler may fetch the URL with this path (and query, e.g. "/a/b?c=d").
+    public boolean isAllowed(String path)
+    {
+        // the longest path of the trie which is a prefix of the URL
+        int bestLength = -1;
+        boolean allowed = true;
+        Node node = root;
+        for (int i = 0; i < path.length() && node != null; i++)
+        {
+            node = node.child(path.charAt(i));
+            if (node != null && node.rule != NONE)
+            {
+                bestLength = i + 1;
+                allowed = node.rule == ALLOW;
+            }
+        }
+
+        // then the paths with wildcards, which only decide if they are longer
+        for (int p = 0; p < patterns.size(); p++)
+        {
+            String pattern = patterns.get(p);
+            boolean allows = patternAllows.get(p);
+            if ((pattern.length() > bestLength || (pattern.length() == bestLength && allows && !allowed))
+                    && matches(pattern, path))
+            {
+                bestLength = pattern.length();
+                allowed = allows;
+            }
+        }
+        return allowed;
+    }
+
+    // returns the time to wait between two requests to the website, in milliseconds (0 if there is no Crawl-delay).
+    public long getCrawlDelayMillis()
+    {
+        return crawlDelayMillis;
+    }
+
+    // matches the pattern (with "*" for any characters and a final "$" for the end of the URL) with the start of the path;
+    // a mismatch only goes back to the last "*", which then takes one more character, so this is O(pattern x path)
+    private static boolean matches(String pattern, String path)
+    {
+        int end = pattern.length();
+        boolean anchored = end > 0 && pattern.charAt(end - 1) == '$';
+        if (anchored) end--;
+        int p = 0, i = 0;
+        int star = -1, starPosition = 0; // the pattern after the last "*", and the position of the path where it is matched
+        while (true)
+        {
+            if (p < end && pattern.charAt(p) == '*')
+            {
+                star = ++p;
+                starPosition = i;
+                continue;
+            }
+            if (p == end)
+            {
+                if (!anchored || i == path.length()) return true;
+            }
+            else if (i < path.length() && path.charAt(i) == pattern.charAt(p))
+            {
+                p++;
+                i++;
+                continue;
+            }
+            if (star == -1 || starPosition >= path.length()) return false;
+            p = star;
+            i = ++starPosition;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// a bounded cache word -> stem, shared by all the threads.
+// Natural text repeats the same few words over and over, so most of the words
+// are found in the cache and never reach the Porter algorithm. The cache is a
+// fixed table where each word has two possible slots; when both are taken, the
+// second one is overwritten, so the memory never grows. Lookups are lock-free
+// and can be made directly with a char[] slice. On a miss, the word is stemmed
+// by a PorterStemmer owned by the current thread, which is reused for every word.
+class StemCache {
+    // the cache used by the indexer and by the searches
+    public static final StemCache shared = new StemCache(1 << 16);
+
+    private static final class Entry
+    {
+        final int hash;
+        final String word;
+        final String stem;
+
+        Entry(int hash, String word, String stem)
+        {
+            this.hash = hash;
+            this.word = word;
+            this.stem = stem;
+        }
+    }
+
+    private static final ThreadLocal<PorterStemmer> stemmers = ThreadLocal.withInitial(PorterStemmer::new);
+
+    private final AtomicReferenceArray<Entry> table;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // creates a cache with room for (at most) the given number of words, rounded
+    // up to a power of 2.
+    public StemCache(int capacity)
+    {
+        int size = 2;
+        while (size < capacity) size *= 2;
+        table = new AtomicReferenceArray<>(size);
+        mask = size - 1;
+    }
+
+    // returns the stem of the word found in buffer[offset..offset+length).
+    public String stem(char[] buffer, int offset, int length)
+    {
+        int hash = CharSlices.hash(buffer, offset, length);
+
+        int slot = CharSlices.spread(hash) & mask;
+        Entry first = table.get(slot);
+        if (first != null && first.hash == hash && CharSlices.equals(first.word, buffer, offset, length))
+        {
+            hits.increment();
+            return first.stem;
+        }
+        Entry second = table.get(slot ^ 1);
+        if (second != null && second.hash == hash && CharSlices.equals(second.word, buffer, offset, length))
+        {
+            hits.increment();
+            return second.stem;
+        }
+
+        misses.increment();
+        PorterStemmer stemmer = stemmers.get();
+        stemmer.reset();
+        stemmer.add(buffer, offset, length);
+        stemmer.stem();
+        String stem = stemmer.toString();
+
+        // the word itself is only copied when it goes into the cache
+        Entry entry = new Entry(hash, new String(buffer, offset, length), stem);
+        table.set(first == null ? slot : slot ^ 1, entry);
+        return stem;
+    }
+
+    // returns the stem of the word.
+    public String stem(String word)
+    {
+        return stem(word.toCharArray(), 0, word.length());
+    }
+
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    // returns the fraction of the lookups answered from the cache (0 if there were no lookups).
+    public double getHitRate()
+    {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public void resetStatistics()
+    {
+        hits.reset();
+        misses.reset();
+    }
+}
@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -669,4 +670,13 @@ public class StopWordList {
             "z",
             "zero,"
     );
+
+    // the list above, as a set that can be tested in O(length), directly from a char[] slice
+    public static volatile TermFilter filter = new TermFilter(stopwords);
+
+    // replaces the stopwords with the ones from a file (one word per line), for example a list specific to a website
+    public static void load(String fileName) throws IOException
+    {
+        filter = TermFilter.load(fileName);
+    }
 }
@@ -0,0 +1,188 @@
+import java.util.Arrays;
+import java.util.HashMap;
+
+// counts the occurrences of the words of a document.
+// The words are kept in an open addressing hash table, with the counts in a
+// primitive int[]. A word can be counted directly from a char[] slice; a String
+// is only created the first time the word is seen. The words are remembered in
+// the order in which they first appeared.
+// Optionally, the positions of the occurrences are recorded too: the position
+// of an occurrence is the number of words added before it.
+class TermCounter {
+    private static final int INITIAL_CAPACITY = 256; // must be a power of 2
+
+    private int[] table;     // position in the table -> index of the word + 1 (0 = free)
+    private String[] words;  // index of the word -> word
+    private int[] hashes;    // index of the word -> hash of the word
+    private int[] counts;    // index of the word -> number of occurrences
+    private int[][] positions; // index of the word -> positions of the occurrences (null if they are not recorded)
+    private int size = 0;
+    private int total = 0;
+
+    public TermCounter()
+    {
+        this(false);
+    }
+
+    public TermCounter(boolean recordPositions)
+    {
+        table = new int[INITIAL_CAPACITY];
+        words = new String[INITIAL_CAPACITY / 2];
+        hashes = new int[INITIAL_CAPACITY / 2];
+        counts = new int[INITIAL_CAPACITY / 2];
+        if (recordPositions) positions = new int[INITIAL_CAPACITY / 2][];
+    }
+
+    // adds one occurrence of the word found in buffer[offset..offset+length).
+    public void add(char[] buffer, int offset, int length)
+    {
+        int hash = CharSlices.hash(buffer, offset, length);
+
+        int mask = table.length - 1;
+        for (int slot = CharSlices.spread(hash) & mask; ; slot = (slot + 1) & mask)
+        {
+            int index = table[slot] - 1;
+            if (index < 0)
+            {
+                insert(slot, new String(buffer, offset, length), hash);
+                return;
+            }
+            if (hashes[index] == hash && CharSlices.equals(words[index], buffer, offset, length))
+            {
+                addPosition(index);
+                counts[index]++;
+                total++;
+                return;
+            }
+        }
+    }
+
+    // adds one occurrence of the word.
+    public void add(String word)
+    {
+        int hash = word.hashCode();
+        int mask = table.length - 1;
+        for (int slot = CharSlices.spread(hash) & mask; ; slot = (slot + 1) & mask)
+        {
+            int index = table[slot] - 1;
+            if (index < 0)
+            {
+                insert(slot, word, hash);
+                return;
+            }
+            if (hashes[index] == hash && words[index].equals(word))
+            {
+                addPosition(index);
+                counts[index]++;
+                total++;
+                return;
+            }
+        }
+    }
+
+    // returns the number of occurrences of the word (0 if it does not appear).
+    public int get(String word)
+    {
+        int hash = word.hashCode();
+        int mask = table.length - 1;
+        for (int slot = CharSlices.spread(hash) & mask; ; slot = (slot + 1) & mask)
+        {
+            int index = table[slot] - 1;
+            if (index < 0) return 0;
+            if (hashes[index] == hash && words[index].equals(word)) return counts[index];
+        }
+    }
+
+    // returns the number of distinct words.
+    public int size()
+    {
+        return size;
+    }
+
+    // returns the number of occurrences of all the words.
+    public int getTotal()
+    {
+        return total;
+    }
+
+    // returns the word with the given index (0 = the first word that appeared).
+    public String getWord(int index)
+    {
+        return words[index];
+    }
+
+    // returns the number of occurrences of the word with the given index.
+    public int getCount(int index)
+    {
+        return counts[index];
+    }
+
+    // returns true if the positions of the occurrences are recorded.
+    public boolean hasPositions()
+    {
+        return positions != null;
+    }
+
+    // returns the positions (increasing) of the occurrences of the word with the given index.
+    public int[] getPositions(int index)
+    {
+        return Arrays.copyOf(positions[index], counts[index]);
+    }
+
+    // copies the counts in a HashMap, adding the words in the order they appeared.
+    public HashMap<String, Integer> toHashMap()
+    {
+        HashMap<String, Integer> wordList = new HashMap<>();
+        for (int index = 0; index < size; index++) wordList.put(words[index], counts[index]);
+        return wordList;
+    }
+
+    private void insert(int slot, String word, int hash)
+    {
+        if (size == words.length)
+        {
+            int newLength = words.length * 2;
+            words = Arrays.copyOf(words, newLength);
+            hashes = Arrays.copyOf(hashes, newLength);
+            counts = Arrays.copyOf(counts, newLength);
+            if (positions != null) positions = Arrays.copyOf(positions, newLength);
+        }
+        words[size] = word;
+        hashes[size] = hash;
+        addPosition(size);
+        counts[size] = 1;
+        table[slot] = ++size;
+        total++;
+
+        // the table is kept at most half full
+        if (size * 2 > table.length) rehash();
+    }
+
+    // records the position of a new occurrence of the word (before its count is incremented)
+    private void addPosition(int index)
+    {
+        if (positions == null) return;
+        int[] wordPositions = positions[index];
+        if (wordPositions == null)
+        {
+            wordPositions = positions[index] = new int[4];
+        }
+        else if (counts[index] == wordPositions.length)
+        {
+            wordPositions = positions[index] = Arrays.copyOf(wordPositions, 2 * wordPositions.length);
+        }
+        wordPositions[counts[index]] = total;
+    }
+
+    private void rehash()
+    {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int index = 0; index < size; index++)
+        {
+            int slot = CharSlices.spread(hashes[index]) & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = index + 1;
+        }
+    }
+}
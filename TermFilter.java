@@ -0,0 +1,86 @@
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collection;
+
+// an immutable set of words (stopwords, exceptions) with O(length) membership.
+// The words are kept in an open addressing hash table together with their hash
+// codes, so a word can be tested directly from a char[] slice, without creating
+// a String. Being immutable, a filter can be shared by any number of threads.
+class TermFilter {
+    private final String[] words; // the hash table (null = free slot)
+    private final int[] hashes;
+    private final int size;
+
+    public TermFilter(Collection<String> terms)
+    {
+        int capacity = 16;
+        while (capacity < terms.size() * 2) capacity *= 2; // at most half full
+
+        words = new String[capacity];
+        hashes = new int[capacity];
+        int count = 0;
+        for (String term : terms)
+        {
+            if (!contains(term))
+            {
+                int hash = term.hashCode();
+                int slot = CharSlices.spread(hash) & (capacity - 1);
+                while (words[slot] != null) slot = (slot + 1) & (capacity - 1);
+                words[slot] = term;
+                hashes[slot] = hash;
+                count++;
+            }
+        }
+        size = count;
+    }
+
+    // loads the words from a UTF-8 text file, one word per line. Empty lines and
+    // lines starting with '#' are ignored.
+    public static TermFilter load(String fileName) throws IOException
+    {
+        ArrayList<String> terms = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(fileName), "utf-8"))) {
+            String line;
+            while ((line = reader.readLine()) != null)
+            {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) terms.add(line);
+            }
+        }
+        return new TermFilter(terms);
+    }
+
+    // tests if the word found in buffer[offset..offset+length) is in the set.
+    public boolean contains(char[] buffer, int offset, int length)
+    {
+        int hash = CharSlices.hash(buffer, offset, length);
+
+        int mask = words.length - 1;
+        for (int slot = CharSlices.spread(hash) & mask; words[slot] != null; slot = (slot + 1) & mask)
+        {
+            if (hashes[slot] == hash && CharSlices.equals(words[slot], buffer, offset, length)) return true;
+        }
+        return false;
+    }
+
+    // tests if the word is in the set.
+    public boolean contains(String word)
+    {
+        int hash = word.hashCode();
+        int mask = words.length - 1;
+        for (int slot = CharSlices.spread(hash) & mask; words[slot] != null; slot = (slot + 1) & mask)
+        {
+            if (hashes[slot] == hash && words[slot].equals(word)) return true;
+        }
+        return false;
+    }
+
+    // returns the number of words in the set.
+    public int size()
+    {
+        return size;
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+// splits a text into words (maximal sequences of letters and digits).
+// The text is scanned through a large char buffer and every word is handed to a
+// WordHandler as a slice of a char[], so no String is created for a word
+// unless the handler decides it needs one. A Tokenizer is not thread safe, but it
+// can be reused for any number of texts.
+class Tokenizer {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // receives the words of the text, one by one. The slice is only valid during
+    // the call, the buffer is reused for the next words.
+    interface WordHandler
+    {
+        void word(char[] buffer, int offset, int length);
+    }
+
+    private final char[] buffer = new char[BUFFER_SIZE]; // the current chunk of text
+    private char[] word = new char[64]; // a word that continues from one chunk to the next one
+    private int wordLength = 0;
+
+    // splits a short text (e.g. a phrase of a query) into words, straight from the String, with the same
+    // separators as tokenize, but without the buffer of a Tokenizer
+    public static List<String> split(String text)
+    {
+        List<String> words = new ArrayList<>();
+        int start = -1; // the start of the current word
+        for (int c = 0; c <= text.length(); c++)
+        {
+            if (c < text.length() && Character.isLetterOrDigit(text.charAt(c)))
+            {
+                if (start < 0) start = c;
+            }
+            else if (start >= 0)
+            {
+                words.add(text.substring(start, c));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    // splits the text given in memory into words.
+    public void tokenize(CharSequence text, WordHandler handler)
+    {
+        int length = text.length();
+        for (int start = 0; start < length; start += BUFFER_SIZE)
+        {
+            int end = Math.min(start + BUFFER_SIZE, length);
+            if (text instanceof String)
+            {
+                ((String) text).getChars(start, end, buffer, 0);
+            }
+            else
+            {
+                for (int c = start; c < end; c++) buffer[c - start] = text.charAt(c);
+            }
+            scan(buffer, 0, end - start, handler);
+        }
+        finish(handler);
+    }
+
+    // splits the words of a char[] slice, without copying it.
+    public void tokenize(char[] text, int offset, int length, WordHandler handler)
+    {
+        scan(text, offset, offset + length, handler);
+        finish(handler);
+    }
+
+    // splits the text read from a reader, one large chunk at a time. The reader
+    // is not closed.
+    public void tokenize(Reader reader, WordHandler handler) throws IOException
+    {
+        int read;
+        while ((read = reader.read(buffer, 0, BUFFER_SIZE)) != -1)
+        {
+            scan(buffer, 0, read, handler);
+        }
+        finish(handler);
+    }
+
+    // scans chunk[offset..end), the words cut by the end of the chunk are kept in "word"
+
+    private void scan(char[] chunk, int offset, int end, WordHandler handler)
+    {
+        int start = -1; // the start of the current word inside the chunk
+        for (int c = offset; c < end; c++)
+        {
+            if (Character.isLetterOrDigit(chunk[c])) // we are in the middle of a word
+            {
+                if (start < 0) start = c;
+            }
+            else if (start >= 0 || wordLength > 0) // we are on the separator after a word
+            {
+                emit(chunk, start, c, handler);
+                start = -1;
+            }
+        }
+        if (start >= 0) append(chunk, start, end);
+    }
+
+    private void emit(char[] chunk, int start, int end, WordHandler handler)
+    {
+        if (wordLength == 0)
+        {
+            // the whole word is in the chunk, so it is passed without copying
+            handler.word(chunk, start, end - start);
+            return;
+        }
+        if (start >= 0) append(chunk, start, end);
+        handler.word(word, 0, wordLength);
+        wordLength = 0;
+    }
+
+    private void append(char[] chunk, int start, int end)
+    {
+        int length = end - start;
+        if (wordLength + length > word.length)
+        {
+            char[] newWord = new char[Math.max(word.length * 2, wordLength + length)];
+            System.arraycopy(word, 0, newWord, 0, wordLength);
+            word = newWord;
+        }
+        System.arraycopy(chunk, start, word, wordLength, length);
+        wordLength += length;
+    }
+
+    // the last word of the text is not followed by a separator
+
+    private void finish(WordHandler handler)
+    {
+        if (wordLength > 0)
+        {
+            handler.word(word, 0, wordLength);
+            wordLength = 0;
+        }
+    }
+}
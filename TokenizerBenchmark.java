@@ -0,0 +1,186 @@
+import org.jsoup.Jsoup;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+
+// compares the two ways of counting the words of a text for the direct index:
+// - "strings": the loop of the first version of DirectIndex.processDocument, a
+// StringBuilder and a String for every word, the stopwords and the exceptions
+// looked up in their lists, a new PorterStemmer for every word and a
+// HashMap<String, Integer> of the counts;
+// - "slices": the current one, the Tokenizer hands the words as slices of its
+// buffer, the filters (TermFilter) and the StemCache are looked up with the slice,
+// and the TermCounter counts the stems without boxing.
+// Both count the same words (checked). The text is the text of the HTML files of
+// a folder, or a generated text whose words follow Zipf's law, like a natural
+// text. Reports the time per MB of text and the bytes allocated (on HotSpot).
+// Usage: TokenizerBenchmark [website folder] [rounds]
+class TokenizerBenchmark {
+    private interface Counter
+    {
+        Map<String, Integer> count(String text);
+    }
+
+    // the loop of the first version of processDocument
+    static Map<String, Integer> countWithStrings(String text)
+    {
+        HashMap<String, Integer> wordList = new HashMap<>();
+        StringBuilder sb = new StringBuilder();
+        int length = text.length();
+        for (int position = 0; position <= length; ++position)
+        {
+            char c = (position < length) ? text.charAt(position) : ' ';
+            if (!Character.isLetterOrDigit(c)) // we are on a separator
+            {
+                String newWord = sb.toString();
+                sb.setLength(0);
+                if (newWord.isEmpty() || (!ExceptionList.exceptions.contains(newWord) && StopWordList.stopwords.contains(newWord)))
+                {
+                    continue;
+                }
+                if (!ExceptionList.exceptions.contains(newWord)) // dictionary word
+                {
+                    PorterStemmer stemmer = new PorterStemmer();
+                    stemmer.add(newWord.toCharArray(), newWord.length());
+                    stemmer.stem();
+                    newWord = stemmer.toString();
+                }
+                wordList.put(newWord, wordList.containsKey(newWord) ? wordList.get(newWord) + 1 : 1);
+            }
+            else
+            {
+                sb.append(c);
+            }
+        }
+        return wordList;
+    }
+
+    // the loop of DirectIndex.processDocument
+    static Map<String, Integer> countWithSlices(String text)
+    {
+        TermCounter wordCounter = new TermCounter();
+        new Tokenizer().tokenize(text, (buffer, offset, length) -> {
+            if (ExceptionList.filter.contains(buffer, offset, length))
+            {
+                wordCounter.add(buffer, offset, length);
+            }
+            else if (!StopWordList.filter.contains(buffer, offset, length))
+            {
+                wordCounter.add(StemCache.shared.stem(buffer, offset, length));
+            }
+        });
+        return wordCounter.toHashMap();
+    }
+
+    // a text of about "size" characters, with the words of a vocabulary (the stopwords, then made up words) drawn
+    // following Zipf's law
+    private static String generateText(int size)
+    {
+        Random random = new Random(42);
+        List<String> vocabulary = new ArrayList<>(StopWordList.stopwords);
+        while (vocabulary.size() < 50000)
+        {
+            StringBuilder word = new StringBuilder();
+            int length = 3 + random.nextInt(8);
+            for (int c = 0; c < length; ++c)
+            {
+                word.append((char) ('a' + random.nextInt(26)));
+            }
+            vocabulary.add(word.toString() + (random.nextInt(4) == 0 ? "ing" : random.nextInt(4) == 0 ? "s" : ""));
+        }
+        double[] cumulative = new double[vocabulary.size()];
+        double total = 0;
+        for (int rank = 0; rank < cumulative.length; ++rank)
+        {
+            total += 1.0 / (rank + 1);
+            cumulative[rank] = total;
+        }
+
+        StringBuilder text = new StringBuilder(size + 32);
+        while (text.length() < size)
+        {
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+            text.append(vocabulary.get((rank >= 0) ? rank : Math.min(-rank - 1, cumulative.length - 1)));
+            text.append(random.nextInt(12) == 0 ? ". " : " ");
+        }
+        return text.toString();
+    }
+
+    // the text of the HTML files of the folder (and its subfolders)
+    private static void readText(File folder, StringBuilder text) throws IOException
+    {
+        File[] files = folder.listFiles();
+        if (files == null) return;
+        for (File file : files)
+        {
+            if (file.isDirectory())
+            {
+                readText(file, text);
+            }
+            else if (file.getName().endsWith(".html") || file.getName().endsWith(".htm"))
+            {
+                text.append(Jsoup.parse(file, null).text()).append('\n');
+            }
+        }
+    }
+
+    private static long allocatedBytes(ThreadMXBean threads)
+    {
+        if (threads instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // runs the counter over the text, "rounds" times after as many rounds of warm up, and prints the best time
+    private static void measure(String name, Counter counter, String text, int rounds)
+    {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        for (int round = 0; round < rounds; ++round)
+        {
+            counter.count(text);
+        }
+        long best = Long.MAX_VALUE;
+        long allocated = 0;
+        for (int round = 0; round < rounds; ++round)
+        {
+            long allocatedBefore = allocatedBytes(threads);
+            long start = System.nanoTime();
+            counter.count(text);
+            best = Math.min(best, System.nanoTime() - start);
+            allocated = allocatedBytes(threads) - allocatedBefore;
+        }
+        double megabytes = text.length() / 1e6;
+        System.out.printf("%-8s %8.1f ms per MB of text, %6.1f MB/s%s%n", name, best / 1e6 / megabytes, megabytes / (best / 1e9),
+                (allocated >= 0) ? String.format(", %.1f bytes allocated per character", (double) allocated / text.length()) : "");
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        String text;
+        if (args.length > 0 && new File(args[0]).isDirectory())
+        {
+            StringBuilder folderText = new StringBuilder();
+            readText(new File(args[0]), folderText);
+            text = folderText.toString();
+        }
+        else
+        {
+            text = generateText(8 * 1000 * 1000);
+        }
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+        System.out.println("Text: " + text.length() + " characters");
+
+        if (!countWithStrings(text).equals(countWithSlices(text)))
+        {
+            System.out.println("The two ways of counting give different words");
+            System.exit(1);
+        }
+        measure("strings", TokenizerBenchmark::countWithStrings, text, rounds);
+        measure("slices", TokenizerBenchmark::countWithSlices, text, rounds);
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+
+// keeps the k best documents of a search, in a min-heap of primitive (score,
+// document id) pairs: the worst of the k documents is on top, so a new document
+// either replaces it or is dropped in O(log k), and the memory does not depend on
+// the number of documents offered.
+// A document is better than another one if it has a higher score, or the same
+// score and a smaller id, so the result does not depend on the order in which
+// the documents are offered. After sort, the documents are in
+// decreasing order (the best one at index 0).
+class TopK {
+    private final int k;
+    private double[] scores;
+    private int[] documents;
+    private int size = 0;
+    private boolean sorted = false;
+
+    public TopK(int k)
+    {
+        if (k < 0) throw new IllegalArgumentException("k must not be negative: " + k);
+        this.k = k;
+        this.scores = new double[Math.min(k, 1024)];
+        this.documents = new int[Math.min(k, 1024)];
+    }
+
+    // offers a document; it is kept if it is among the k best so far.
+    public void add(int document, double score)
+    {
+        if (sorted) throw new IllegalStateException("The results are already sorted");
+        if (size < k)
+        {
+            if (size == scores.length) grow();
+            // sift up from the new leaf
+            int i = size++;
+            while (i > 0)
+            {
+                int parent = (i - 1) >>> 1;
+                if (!worse(score, document, scores[parent], documents[parent])) break;
+                scores[i] = scores[parent];
+                documents[i] = documents[parent];
+                i = parent;
+            }
+            scores[i] = score;
+            documents[i] = document;
+        }
+        else if (k > 0 && worse(scores[0], documents[0], score, document))
+        {
+            siftDown(0, score, document, size);
+        }
+    }
+
+    // returns true when k documents are kept: a new document must then beat minScore.
+    public boolean isFull()
+    {
+        return size == k;
+    }
+
+    // returns the score of the worst document kept (0 if there is none).
+    public double minScore()
+    {
+        return size == 0 ? 0 : scores[0];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    // sorts the documents from the best to the worst (heap sort, in place); no document can be added afterwards.
+    public TopK sort()
+    {
+        if (sorted) return this;
+        for (int end = size - 1; end > 0; end--)
+        {
+            // the worst one goes to the end, the last leaf is sifted down from the root
+            double score = scores[end];
+            int document = documents[end];
+            scores[end] = scores[0];
+            documents[end] = documents[0];
+            siftDown(0, score, document, end);
+        }
+        sorted = true;
+        return this;
+    }
+
+    // returns the id of the document at the given rank (0 = the best one), once sorted.
+    public int getDocument(int rank)
+    {
+        checkSorted();
+        return documents[rank];
+    }
+
+    // returns the score of the document at the given rank (0 = the best one), once sorted.
+    public double getScore(int rank)
+    {
+        checkSorted();
+        return scores[rank];
+    }
+
+    private void checkSorted()
+    {
+        if (!sorted) throw new IllegalStateException("The results must be sorted first");
+    }
+
+    // places (score, document) at position i, going down the heap of the given size
+    private void siftDown(int i, double score, int document, int heapSize)
+    {
+        while (true)
+        {
+            int child = 2 * i + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && worse(scores[child + 1], documents[child + 1], scores[child], documents[child])) child++;
+            if (!worse(scores[child], documents[child], score, document)) break;
+            scores[i] = scores[child];
+            documents[i] = documents[child];
+            i = child;
+        }
+        scores[i] = score;
+        documents[i] = document;
+    }
+
+    private static boolean worse(double score1, int document1, double score2, int document2)
+    {
+        return score1 < score2 || (score1 == score2 && document1 > document2);
+    }
+
+    private void grow()
+    {
+        int length = (int) Math.min(k, 2L * scores.length);
+        scores = Arrays.copyOf(scores, length);
+        documents = Arrays.copyOf(documents, length);
+    }
+}
@@ -0,0 +1,322 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+
+// brings the URLs to a canonical form, so that the different ways of writing
+// the same page give the same URL (and the same fingerprint, see
+// fingerprint):
+// - the scheme and the host in lower case, without the default port (80 for
+// http, 443 for https), and "/" for an empty path;
+// - the percent-encodings with upper case hexadecimal digits, the unreserved
+// characters (letters, digits, "-", ".", "_", "~") decoded, and the spaces and
+// the other characters which cannot appear in a URL encoded (UTF-8);
+// - the "." and ".." segments of the path resolved;
+// - no fragment ("#..."), and the parameters of the query sorted, without the
+// empty ones and without the session ids (";jsessionid=..." in the path, or the
+// parameters with one of the given names in the query).
+// Only the http and https URLs are normalized. A normalizer can be shared by
+// several threads: each thread works in its own buffers, so normalizing a URL
+// only allocates the resulting string, and computing a fingerprint nothing.
+class UrlNormalizer {
+    // the usual names of the parameters which carry a session id.
+    static final String[] SESSION_PARAMETERS = {"jsessionid", "phpsessid", "aspsessionid", "sessionid", "session_id", "sid", "cfid", "cftoken"};
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // the buffers of a thread: the canonical URL, the path or the query being normalized, the parameters of the query
+    private static class Buffers
+    {
+        final StringBuilder url = new StringBuilder(256);
+        final StringBuilder part = new StringBuilder(256);
+        int[] parameters = new int[32]; // (start, end) in part
+    }
+
+    private final ThreadLocal<Buffers> buffers = ThreadLocal.withInitial(Buffers::new);
+    private final String[] sessionParameters;
+
+    // creates a normalizer which removes the usual session ids (SESSION_PARAMETERS).
+    public UrlNormalizer()
+    {
+        this(Arrays.asList(SESSION_PARAMETERS));
+    }
+
+    // creates a normalizer which removes the parameters with these names (in any case).
+    public UrlNormalizer(Collection<String> sessionParameters)
+    {
+        this.sessionParameters = new String[sessionParameters.size()];
+        int i = 0;
+        for (String parameter : sessionParameters) this.sessionParameters[i++] = parameter.toLowerCase(Locale.ROOT);
+    }
+
+    // returns the canonical form of an absolute http or https URL, or null for another URL.
+    public String normalize(String url)
+    {
+        Buffers buffers = this.buffers.get();
+        return normalize(url, buffers) ? buffers.url.toString() : null;
+    }
+
+    // returns the 64-bit fingerprint of the canonical form of the URL (the same
+    // as UrlSeenStore.fingerprint(normalize(url))), or 0 if it cannot be normalized.
+    public long fingerprint(String url)
+    {
+        Buffers buffers = this.buffers.get();
+        return normalize(url, buffers) ? UrlSeenStore.fingerprint(buffers.url) : 0;
+    }
+
+    // writes the canonical URL in buffers.url; returns false if it is not an http(s) URL
+    private boolean normalize(String url, Buffers buffers)
+    {
+        StringBuilder out = buffers.url;
+        out.setLength(0);
+        int start = 0, end = url.length();
+        while (start < end && url.charAt(start) <= ' ') start++;
+        while (end > start && url.charAt(end - 1) <= ' ') end--;
+
+        // scheme
+        int colon = url.indexOf(':', start);
+        if (colon == -1 || colon + 2 >= end || url.charAt(colon + 1) != '/' || url.charAt(colon + 2) != '/') return false;
+        boolean https;
+        if (url.regionMatches(true, start, "http", 0, colon - start) && colon - start == 4)
+        {
+            https = false;
+        }
+        else if (url.regionMatches(true, start, "https", 0, colon - start) && colon - start == 5)
+        {
+            https = true;
+        }
+        else
+        {
+            return false;
+        }
+        out.append(https ? "https://" : "http://");
+
+        // authority: the user information is kept, the host goes to lower case, the default port is removed
+        int authorityStart = colon + 3;
+        int authorityEnd = authorityStart;
+        while (authorityEnd < end && "/?#".indexOf(url.charAt(authorityEnd)) == -1) authorityEnd++;
+        int hostStart = url.lastIndexOf('@', authorityEnd - 1) + 1;
+        if (hostStart <= authorityStart) hostStart = authorityStart;
+        int portStart = authorityEnd;
+        for (int i = authorityEnd - 1; i >= hostStart && url.charAt(i) != ']'; i--)
+        {
+            if (url.charAt(i) == ':')
+            {
+                portStart = i;
+                break;
+            }
+        }
+        if (portStart == hostStart) return false; // no host
+        out.append(url, authorityStart, hostStart);
+        for (int i = hostStart; i < portStart; i++) out.append(Character.toLowerCase(url.charAt(i)));
+        if (portStart < authorityEnd - 1)
+        {
+            int port = 0;
+            for (int i = portStart + 1; i < authorityEnd; i++)
+            {
+                char c = url.charAt(i);
+                if (c < '0' || c > '9') return false;
+                port = Math.min(port * 10 + (c - '0'), 100000);
+            }
+            if (port != (https ? 443 : 80)) out.append(':').append(port);
+        }
+
+        // path, without the dot segments
+        int pathEnd = authorityEnd;
+        while (pathEnd < end && url.charAt(pathEnd) != '?' && url.charAt(pathEnd) != '#') pathEnd++;
+        StringBuilder part = buffers.part;
+        part.setLength(0);
+        if (authorityEnd == pathEnd || url.charAt(authorityEnd) != '/') part.append('/');
+        appendEncoded(url, authorityEnd, pathEnd, part);
+        appendPath(part, out);
+
+        // query, with the parameters sorted
+        if (pathEnd < end && url.charAt(pathEnd) == '?')
+        {
+            int queryEnd = url.indexOf('#', pathEnd);
+            if (queryEnd == -1 || queryEnd > end) queryEnd = end;
+            part.setLength(0);
+            appendEncoded(url, pathEnd + 1, queryEnd, part);
+            appendQuery(part, buffers, out);
+        }
+        return true;
+    }
+
+    // appends the characters, with their percent-encoding normalized
+    private static void appendEncoded(String url, int start, int end, StringBuilder out)
+    {
+        for (int i = start; i < end; i++)
+        {
+            char c = url.charAt(i);
+            if (c == '%' && i + 2 < end && hexValue(url.charAt(i + 1)) >= 0 && hexValue(url.charAt(i + 2)) >= 0)
+            {
+                int value = hexValue(url.charAt(i + 1)) * 16 + hexValue(url.charAt(i + 2));
+                if (isUnreserved(value))
+                {
+                    out.append((char) value);
+                }
+                else
+                {
+                    appendPercent(value, out);
+                }
+                i += 2;
+            } else if (c == '%' || c <= ' ' || c >= 0x7F || c == '"' || c == '<' || c == '>' || c == '\\'
+                    || c == '^' || c == '`' || c == '{' || c == '|' || c == '}')
+            {
+                // not allowed in a URL: encoded in UTF-8
+                int codePoint = c;
+                if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(url.charAt(i + 1)))
+                {
+                    codePoint = Character.toCodePoint(c, url.charAt(++i));
+                }
+                appendUtf8(codePoint, out);
+            }
+            else
+            {
+                out.append(c);
+            }
+        }
+    }
+
+    // appends the path (which starts with "/"), resolving its "." and ".." segments and removing the session ids
+    private void appendPath(StringBuilder path, StringBuilder out)
+    {
+        int base = out.length();
+        int length = path.length();
+        int i = 0;
+        while (i < length)
+        {
+            int next = i + 1;
+            while (next < length && path.charAt(next) != '/') next++;
+            int segmentEnd = next;
+            for (int j = i + 1; j < next; j++)
+            {
+                if (path.charAt(j) == ';' && isSessionParameter(path, j + 1, next))
+                {
+                    segmentEnd = j;
+                    break;
+                }
+            }
+            int segmentLength = segmentEnd - i - 1;
+            boolean last = next == length;
+            if (segmentLength == 1 && path.charAt(i + 1) == '.')
+            {
+                if (last) out.append('/');
+            }
+            else if (segmentLength == 2 && path.charAt(i + 1) == '.' && path.charAt(i + 2) == '.')
+            {
+                int slash = out.lastIndexOf("/");
+                out.setLength(Math.max(slash, base));
+                if (last) out.append('/');
+            }
+            else
+            {
+                out.append(path, i, segmentEnd);
+            }
+            i = next;
+        }
+        if (out.length() == base) out.append('/');
+    }
+
+    // appends "?" and the parameters of the query, sorted, without the empty parameters and the session ids
+    private void appendQuery(StringBuilder query, Buffers buffers, StringBuilder out)
+    {
+        int count = 0;
+        int length = query.length();
+        for (int start = 0; start <= length; )
+        {
+            int end = start;
+            while (end < length && query.charAt(end) != '&') end++;
+            if (end > start && !isSessionParameter(query, start, end))
+            {
+                if (2 * count + 2 > buffers.parameters.length) buffers.parameters = Arrays.copyOf(buffers.parameters, 4 * count + 4);
+                int[] parameters = buffers.parameters;
+                // insertion sort: a few parameters
+                int p = count;
+                while (p > 0 && compare(query, parameters[2 * p - 2], parameters[2 * p - 1], start, end) > 0)
+                {
+                    parameters[2 * p] = parameters[2 * p - 2];
+                    parameters[2 * p + 1] = parameters[2 * p - 1];
+                    p--;
+                }
+                parameters[2 * p] = start;
+                parameters[2 * p + 1] = end;
+                count++;
+            }
+            start = end + 1;
+        }
+        for (int p = 0; p < count; p++)
+        {
+            out.append(p == 0 ? '?' : '&').append(query, buffers.parameters[2 * p], buffers.parameters[2 * p + 1]);
+        }
+    }
+
+    // true if the parameter "name=value" between start and end has the name of a session id
+    private boolean isSessionParameter(CharSequence text, int start, int end)
+    {
+        int nameEnd = start;
+        while (nameEnd < end && text.charAt(nameEnd) != '=') nameEnd++;
+        for (String parameter : sessionParameters)
+        {
+            if (parameter.length() != nameEnd - start) continue;
+            int i = 0;
+            while (i < parameter.length() && Character.toLowerCase(text.charAt(start + i)) == parameter.charAt(i)) i++;
+            if (i == parameter.length()) return true;
+        }
+        return false;
+    }
+
+    private static int compare(CharSequence text, int start1, int end1, int start2, int end2)
+    {
+        int length = Math.min(end1 - start1, end2 - start2);
+        for (int i = 0; i < length; i++)
+        {
+            int difference = text.charAt(start1 + i) - text.charAt(start2 + i);
+            if (difference != 0) return difference;
+        }
+        return (end1 - start1) - (end2 - start2);
+    }
+
+    private static boolean isUnreserved(int c)
+    {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static int hexValue(char c)
+    {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+
+    private static void appendPercent(int value, StringBuilder out)
+    {
+        out.append('%').append(HEX_DIGITS[value >> 4]).append(HEX_DIGITS[value & 0xF]);
+    }
+
+    private static void appendUtf8(int codePoint, StringBuilder out)
+    {
+        if (codePoint < 0x80)
+        {
+            appendPercent(codePoint, out);
+        }
+        else if (codePoint < 0x800)
+        {
+            appendPercent(0xC0 | (codePoint >> 6), out);
+            appendPercent(0x80 | (codePoint & 0x3F), out);
+        }
+        else if (codePoint < 0x10000)
+        {
+            appendPercent(0xE0 | (codePoint >> 12), out);
+            appendPercent(0x80 | ((codePoint >> 6) & 0x3F), out);
+            appendPercent(0x80 | (codePoint & 0x3F), out);
+        }
+        else
+        {
+            appendPercent(0xF0 | (codePoint >> 18), out);
+            appendPercent(0x80 | ((codePoint >> 12) & 0x3F), out);
+            appendPercent(0x80 | ((codePoint >> 6) & 0x3F), out);
+            appendPercent(0x80 | (codePoint & 0x3F), out);
+        }
+    }
+}
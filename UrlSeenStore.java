@@ -0,0 +1,439 @@
+import java.io.*;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// the set of the URLs already seen by the crawler, for any number of URLs: the
+// URLs are represented by 64-bit fingerprints (see fingerprint), and
+// - a scalable Bloom filter in memory (about 10 bits per URL) answers "never
+// seen" for almost all the new URLs without looking further;
+// - the exact set is on disk: a file of sorted fingerprints, memory mapped and
+// binary searched, which confirms the URLs the Bloom filter may have seen;
+// - the fingerprints added since the file was last written wait in a hash
+// table in memory, and are merged into the file when it is full.
+// Each merge writes a new generation of the file (the store "crawl.seen" is in
+// crawl.seen.0, crawl.seen.1, ...): the file of the previous generation may still
+// be mapped, and a mapped file can be neither replaced nor deleted on every
+// system. It is deleted as soon as it can be, at the latest when the store is
+// opened again.
+// The lookups (contains) are lock-free: the Bloom filter and the hash
+// table are arrays of atomic longs, and a new file is only published once
+// written. The additions (add) share a read lock, only taken
+// exclusively while the fingerprints in memory are merged into the file.
+class UrlSeenStore implements Closeable {
+    private static final int PENDING_CAPACITY = 1 << 20;                  // slots of the hash table (8 MB)
+    private static final int PENDING_MAX = PENDING_CAPACITY / 2;          // fingerprints before a merge
+    private static final int INITIAL_BLOOM_CAPACITY = 1 << 20;            // URLs of the first Bloom filter
+    private static final double BLOOM_FALSE_POSITIVES = 0.01;             // for the first Bloom filter, halved for each next one
+    private static final int SEGMENT_SHIFT = 27;                          // 2^27 fingerprints (1 GB) per mapped segment of the file
+
+    // a Bloom filter whose bits are set with compare-and-set, so it can be read
+    // and written by several threads without locks.
+    private static class BloomFilter
+    {
+        final AtomicLongArray bits;
+        final long numberOfBits;
+        final int numberOfHashes;
+        final long capacity;
+        final AtomicInteger count = new AtomicInteger();
+
+        BloomFilter(long capacity, double falsePositives)
+        {
+            long m = (long) Math.ceil(-capacity * Math.log(falsePositives) / (Math.log(2) * Math.log(2)));
+            int words = (int) Math.min((m + 63) / 64, Integer.MAX_VALUE - 8);
+            this.bits = new AtomicLongArray(words);
+            this.numberOfBits = 64L * words;
+            this.numberOfHashes = Math.max(1, (int) Math.round((double) numberOfBits / capacity * Math.log(2)));
+            this.capacity = capacity;
+        }
+
+        // the k positions come from the two halves of the fingerprint (double hashing)
+        boolean mightContain(long fingerprint)
+        {
+            int hash1 = (int) fingerprint;
+            int hash2 = (int) (fingerprint >>> 32) | 1;
+            for (int i = 0; i < numberOfHashes; i++)
+            {
+                long bit = Math.floorMod(hash1 + (long) i * hash2, numberOfBits);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        void put(long fingerprint)
+        {
+            int hash1 = (int) fingerprint;
+            int hash2 = (int) (fingerprint >>> 32) | 1;
+            for (int i = 0; i < numberOfHashes; i++)
+            {
+                long bit = Math.floorMod(hash1 + (long) i * hash2, numberOfBits);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long value;
+                while (((value = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, value, value | mask))
+                {
+                    // another bit of the word changed in the meantime, try again
+                }
+            }
+            count.incrementAndGet();
+        }
+    }
+
+    // a set of fingerprints in open addressing (linear probing) with
+    // compare-and-set insertions; 0 marks an empty slot, so the fingerprint 0 is
+    // stored as 1 (see fingerprint).
+    private static class LongHashSet
+    {
+        final AtomicLongArray slots = new AtomicLongArray(PENDING_CAPACITY);
+        final AtomicInteger size = new AtomicInteger();
+
+        // returns false if the fingerprint is already there, or if the table is full
+        boolean add(long fingerprint)
+        {
+            int mask = PENDING_CAPACITY - 1;
+            for (int slot = slot(fingerprint), probes = 0; probes < PENDING_CAPACITY; slot = (slot + 1) & mask, probes++)
+            {
+                long value = slots.get(slot);
+                if (value == fingerprint) return false;
+                if (value == 0)
+                {
+                    if (slots.compareAndSet(slot, 0, fingerprint))
+                    {
+                        size.incrementAndGet();
+                        return true;
+                    }
+                    if (slots.get(slot) == fingerprint) return false; // the same fingerprint was added at the same time
+                }
+            }
+            return false;
+        }
+
+        boolean contains(long fingerprint)
+        {
+            int mask = PENDING_CAPACITY - 1;
+            for (int slot = slot(fingerprint), probes = 0; probes < PENDING_CAPACITY; slot = (slot + 1) & mask, probes++)
+            {
+                long value = slots.get(slot);
+                if (value == fingerprint) return true;
+                if (value == 0) return false;
+            }
+            return false;
+        }
+
+        long[] toSortedArray()
+        {
+            long[] fingerprints = new long[size.get()];
+            int count = 0;
+            for (int slot = 0; slot < PENDING_CAPACITY && count < fingerprints.length; slot++)
+            {
+                long value = slots.get(slot);
+                if (value != 0) fingerprints[count++] = value;
+            }
+            Arrays.sort(fingerprints, 0, count);
+            return (count == fingerprints.length) ? fingerprints : Arrays.copyOf(fingerprints, count);
+        }
+
+        private static int slot(long fingerprint)
+        {
+            return (int) (fingerprint ^ (fingerprint >>> 32)) & (PENDING_CAPACITY - 1);
+        }
+    }
+
+    // the sorted fingerprints of the file, memory mapped (read only).
+    private static class SortedFile
+    {
+        final LongBuffer[] segments;
+        final long size;
+
+        SortedFile(File file) throws IOException
+        {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                size = channel.size() / 8;
+                segments = new LongBuffer[(int) ((size + (1L << SEGMENT_SHIFT) - 1) >>> SEGMENT_SHIFT)];
+                for (int s = 0; s < segments.length; s++)
+                {
+                    long start = (long) s << SEGMENT_SHIFT;
+                    long length = Math.min(1L << SEGMENT_SHIFT, size - start);
+                    segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, 8 * start, 8 * length).asLongBuffer();
+                }
+            }
+        }
+
+        long get(long index)
+        {
+            return segments[(int) (index >>> SEGMENT_SHIFT)].get((int) (index & ((1L << SEGMENT_SHIFT) - 1)));
+        }
+
+        boolean contains(long fingerprint)
+        {
+            long low = 0, high = size - 1;
+            while (low <= high)
+            {
+                long middle = (low + high) >>> 1;
+                long value = get(middle);
+                if (value < fingerprint) low = middle + 1;
+                else if (value > fingerprint) high = middle - 1;
+                else return true;
+            }
+            return false;
+        }
+    }
+
+    private final File file; // the name of the store, without the generation
+    private long generation;
+    private final List<File> obsoleteFiles = new ArrayList<>(); // the previous generations, to delete
+    private volatile BloomFilter[] blooms;
+    private volatile LongHashSet pending = new LongHashSet();
+    private volatile LongHashSet merging = null; // the fingerprints being merged into the file
+    private volatile SortedFile sortedFile;
+    private final ReentrantReadWriteLock mergeLock = new ReentrantReadWriteLock();
+
+    private UrlSeenStore(File file, long expectedUrls, boolean empty) throws IOException
+    {
+        this.file = file;
+        // the last generation of the file is the current one; the other ones, and the merges left unfinished, are obsolete
+        generation = -1;
+        File[] files = file.getAbsoluteFile().getParentFile().listFiles();
+        if (files != null)
+        {
+            for (File other : files)
+            {
+                if (!other.getName().startsWith(file.getName() + ".")) continue;
+                String suffix = other.getName().substring(file.getName().length() + 1);
+                if (suffix.matches("[0-9]{1,18}"))
+                {
+                    long otherGeneration = Long.parseLong(suffix);
+                    if (otherGeneration > generation)
+                    {
+                        if (generation != -1) obsoleteFiles.add(generationFile(generation));
+                        generation = otherGeneration;
+                    }
+                    else
+                    {
+                        obsoleteFiles.add(other);
+                    }
+                }
+                else if (suffix.matches("[0-9]{1,18}\\.tmp"))
+                {
+                    obsoleteFiles.add(other);
+                }
+            }
+        }
+        if (empty && generation != -1) obsoleteFiles.add(generationFile(generation));
+        if (empty || generation == -1)
+        {
+            generation++;
+            new FileOutputStream(generationFile(generation)).close();
+        }
+        sortedFile = new SortedFile(generationFile(generation));
+        deleteObsoleteFiles();
+        blooms = new BloomFilter[]{new BloomFilter(Math.max(expectedUrls, Math.max(sortedFile.size, INITIAL_BLOOM_CAPACITY)), BLOOM_FALSE_POSITIVES)};
+        for (long i = 0; i < sortedFile.size; i++) blooms[0].put(sortedFile.get(i));
+    }
+
+    // creates an empty store with this name (an existing store is replaced).
+    public static UrlSeenStore create(String fileName, long expectedUrls) throws IOException
+    {
+        return new UrlSeenStore(new File(fileName), expectedUrls, true);
+    }
+
+    // opens the store with this name (created if it does not exist), with the URLs it already contains.
+    public static UrlSeenStore open(String fileName, long expectedUrls) throws IOException
+    {
+        return new UrlSeenStore(new File(fileName), expectedUrls, false);
+    }
+
+    // returns the 64-bit fingerprint of a URL (never 0): FNV-1a over its characters, then mixed.
+    static long fingerprint(CharSequence url)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++)
+        {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // the final mix of MurmurHash3, so that all the bits depend on all the characters
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (hash == 0) ? 1 : hash;
+    }
+
+    // returns true if the fingerprint was added to the store. Never blocks.
+    public boolean contains(long fingerprint)
+    {
+        if (fingerprint == 0) fingerprint = 1;
+        if (!mightContain(fingerprint)) return false;
+        // in this order, a fingerprint moved from the table to the file is always found in one of them
+        if (pending.contains(fingerprint)) return true;
+        LongHashSet merged = merging;
+        if (merged != null && merged.contains(fingerprint)) return true;
+        return sortedFile.contains(fingerprint);
+    }
+
+    // adds the fingerprint to the store; returns false if it was already there.
+    public boolean add(long fingerprint) throws IOException
+    {
+        if (fingerprint == 0) fingerprint = 1;
+        while (true)
+        {
+            mergeLock.readLock().lock();
+            try {
+                LongHashSet table = pending;
+                if (table.size.get() < PENDING_MAX)
+                {
+                    // the Bloom filter says "new" for almost all the new URLs; otherwise the file must confirm it
+                    if (mightContain(fingerprint) && sortedFile.contains(fingerprint)) return false;
+                    if (!table.add(fingerprint)) return false;
+                    addToBloom(fingerprint);
+                    return true;
+                }
+            } finally {
+                mergeLock.readLock().unlock();
+            }
+            flush(PENDING_MAX);
+        }
+    }
+
+    // writes the fingerprints waiting in memory to the file.
+    public void flush() throws IOException
+    {
+        flush(1);
+    }
+
+    // merges the table into the file, if it has at least minimumSize fingerprints
+    private void flush(int minimumSize) throws IOException
+    {
+        mergeLock.writeLock().lock();
+        try {
+            if (pending.size.get() < minimumSize) return; // another thread did it
+            merging = pending;
+            pending = new LongHashSet();
+
+            File nextFile = generationFile(generation + 1);
+            File mergedFile = new File(nextFile.getPath() + ".tmp");
+            boolean published = false;
+            try {
+                long[] fingerprints = merging.toSortedArray();
+                try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mergedFile), 1 << 16))) {
+                    SortedFile current = sortedFile;
+                    long i = 0;
+                    int j = 0;
+                    while (i < current.size || j < fingerprints.length)
+                    {
+                        if (j == fingerprints.length || (i < current.size && current.get(i) < fingerprints[j]))
+                        {
+                            output.writeLong(current.get(i++));
+                        }
+                        else
+                        {
+                            output.writeLong(fingerprints[j++]);
+                        }
+                    }
+                }
+                // the new generation is only published once complete; the lookups may still read the previous one
+                Files.move(mergedFile.toPath(), nextFile.toPath());
+                sortedFile = new SortedFile(nextFile);
+                published = true;
+            } finally {
+                if (published)
+                {
+                    merging = null;
+                    obsoleteFiles.add(generationFile(generation));
+                    generation++;
+                    deleteObsoleteFiles();
+                }
+                else
+                {
+                    // the fingerprints go back to the table (which is still empty: the additions wait for the lock), so
+                    // they are not added again and the next merge retries them; "merging" stays the same table until then,
+                    // so the lookups which already read the empty table find them there
+                    pending = merging;
+                    mergedFile.delete();
+                    nextFile.delete();
+                }
+            }
+        } finally {
+            mergeLock.writeLock().unlock();
+        }
+    }
+
+    // returns the number of URLs in the store.
+    public long size()
+    {
+        return sortedFile.size + pending.size.get();
+    }
+
+    // returns the memory used by the Bloom filters, in bytes.
+    public long getBloomBytes()
+    {
+        long bytes = 0;
+        for (BloomFilter bloom : blooms) bytes += 8L * bloom.bits.length();
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        flush();
+        mergeLock.writeLock().lock();
+        try {
+            deleteObsoleteFiles();
+        } finally {
+            mergeLock.writeLock().unlock();
+        }
+    }
+
+    private File generationFile(long generation)
+    {
+        return new File(file.getPath() + "." + generation);
+    }
+
+    // deletes the files of the previous generations which are not mapped any more (on Windows, once the mapping is collected)
+    private void deleteObsoleteFiles()
+    {
+        obsoleteFiles.removeIf(obsolete -> !obsolete.exists() || obsolete.delete());
+    }
+
+    private boolean mightContain(long fingerprint)
+    {
+        for (BloomFilter bloom : blooms)
+        {
+            if (bloom.mightContain(fingerprint)) return true;
+        }
+        return false;
+    }
+
+    // adds to the last Bloom filter; when it is full, a new one twice as large, with half the false positives, is added
+    private void addToBloom(long fingerprint)
+    {
+        BloomFilter[] current = blooms;
+        BloomFilter last = current[current.length - 1];
+        if (last.count.get() >= last.capacity)
+        {
+            synchronized (this)
+            {
+                current = blooms;
+                last = current[current.length - 1];
+                if (last.count.get() >= last.capacity)
+                {
+                    int level = current.length;
+                    BloomFilter[] grown = Arrays.copyOf(current, level + 1);
+                    grown[level] = new BloomFilter(last.capacity * 2, BLOOM_FALSE_POSITIVES / Math.pow(2, level));
+                    blooms = grown;
+                    last = grown[level];
+                }
+            }
+        }
+        last.put(fingerprint);
+    }
+}
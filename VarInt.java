@@ -0,0 +1,47 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// variable length encoding of non-negative integers: 7 bits per byte, the high
+// bit of a byte being set when more bytes follow. Small numbers (like the gaps
+// between the sorted document ids of a postings list) take a single byte.
+class VarInt {
+    private VarInt()
+    {
+    }
+
+    public static void write(DataOutput output, int value) throws IOException
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    public static int read(ByteBuffer buffer)
+    {
+        int b = buffer.get();
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7)
+        {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    public static int read(DataInput input) throws IOException
+    {
+        int b = input.readByte();
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7)
+        {
+            b = input.readByte();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,361 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// the vectors of the documents turned inside out: for each word, the documents
+// in which it has a non-zero weight (tf x idf), in increasing order of their ids,
+// together with these weights divided by the lengths of the vectors of the
+// documents, so the cosine similarity of a document is a plain sum of products.
+// The cosine similarities are computed term at a time by score: the
+// postings of each word of the query are added to an accumulator of the
+// documents they touch, so a query only costs the postings of its words,
+// whatever the number of documents. The accumulator is reused from one query to
+// the next, so a VectorIndex can only score one query at a time.
+// When only the best k documents are needed, topK goes through the
+// postings document at a time with Block-Max WAND: the maximum weight of every
+// word, and of every block of BLOCK_SIZE postings of the word, bound the score a
+// document can reach, and the documents which cannot enter the current top k
+// are skipped without being scored. When few documents can be skipped (the
+// postings are mostly those of words which could bring a document into the top k
+// by themselves), topK scores the query term at a time instead, which costs less
+// per posting.
+class VectorIndex {
+    static final int BLOCK_SIZE = 128; // the number of postings which share a maximum weight
+    static final int ESSENTIAL_SHARE = 8; // Block-Max WAND when the essential postings are at most this share of the postings
+
+    // the postings of a word
+    private static class WordPostings
+    {
+        final int[] documents;
+        final double[] weights;     // tf x idf / length of the vector of the document
+        double maxWeight = 0;
+        int[] blockLastDocuments;   // block -> its last document
+        double[] blockMaxWeights;   // block -> its maximum weight
+
+        WordPostings(int length)
+        {
+            documents = new int[length];
+            weights = new double[length];
+        }
+
+        // computes the upper bounds of the weights, once the postings are filled
+        void computeMaxWeights()
+        {
+            int numberOfBlocks = (documents.length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+            blockLastDocuments = new int[numberOfBlocks];
+            blockMaxWeights = new double[numberOfBlocks];
+            for (int p = 0; p < documents.length; p++)
+            {
+                int block = p / BLOCK_SIZE;
+                blockLastDocuments[block] = documents[p];
+                blockMaxWeights[block] = Math.max(blockMaxWeights[block], weights[p]);
+                maxWeight = Math.max(maxWeight, weights[p]);
+            }
+        }
+    }
+
+    private final HashMap<String, WordPostings> postings = new HashMap<>();
+
+    // the accumulator: the partial scalar products of the documents touched by the current query
+    private final double[] scores;
+    private final int[] touched;
+    private int numberOfTouched = 0;
+
+    private VectorIndex(int numberOfDocuments)
+    {
+        scores = new double[numberOfDocuments];
+        touched = new int[numberOfDocuments];
+    }
+
+    // builds the index from the vectors of the documents (document id -> (word ->
+    // tf x idf)) and the lengths of these vectors.
+    public static VectorIndex build(Map<Integer, ? extends Map<String, Double>> vectors, Map<Integer, Double> norms)
+    {
+        int numberOfDocuments = 0;
+        for (int document : vectors.keySet()) numberOfDocuments = Math.max(numberOfDocuments, document + 1);
+        VectorIndex index = new VectorIndex(numberOfDocuments);
+
+        // first the number of documents of each word, then the postings, filled in increasing order of the documents
+        HashMap<String, int[]> lengths = new HashMap<>();
+        for (Map<String, Double> vector : vectors.values())
+        {
+            for (Map.Entry<String, Double> word : vector.entrySet())
+            {
+                if (word.getValue() == 0) continue; // adds nothing to a scalar product
+                int[] length = lengths.get(word.getKey());
+                if (length == null) lengths.put(word.getKey(), length = new int[1]);
+                length[0]++;
+            }
+        }
+        for (Map.Entry<String, int[]> word : lengths.entrySet())
+        {
+            index.postings.put(word.getKey(), new WordPostings(word.getValue()[0]));
+            word.getValue()[0] = 0;
+        }
+
+        for (Map.Entry<Integer, ? extends Map<String, Double>> vector : new TreeMap<>(vectors).entrySet())
+        {
+            int document = vector.getKey();
+            Double norm = norms.get(document);
+            double documentNorm = (norm != null) ? norm : norm(vector.getValue());
+            for (Map.Entry<String, Double> word : vector.getValue().entrySet())
+            {
+                if (word.getValue() == 0) continue;
+                int[] length = lengths.get(word.getKey());
+                WordPostings wordPostings = index.postings.get(word.getKey());
+                wordPostings.documents[length[0]] = document;
+                wordPostings.weights[length[0]] = word.getValue() / documentNorm;
+                length[0]++;
+            }
+        }
+
+        for (WordPostings wordPostings : index.postings.values()) wordPostings.computeMaxWeights();
+        return index;
+    }
+
+    // builds the index from the columns of a vector store, without creating a map for each vector.
+    public static VectorIndex build(VectorStore store)
+    {
+        VectorIndex index = new VectorIndex(store.getNumberOfDocuments());
+
+        // the same two passes, with the term ids as indexes in the arrays
+        int[] lengths = new int[store.getNumberOfTerms()];
+        for (int entry = 0; entry < store.getNumberOfEntries(); entry++)
+        {
+            if (store.getWeight(entry) != 0) lengths[store.getTermId(entry)]++;
+        }
+        WordPostings[] termPostings = new WordPostings[lengths.length];
+        for (int term = 0; term < lengths.length; term++)
+        {
+            if (lengths[term] == 0) continue;
+            termPostings[term] = new WordPostings(lengths[term]);
+            index.postings.put(store.getWord(term), termPostings[term]);
+            lengths[term] = 0;
+        }
+
+        for (int document = 0; document < store.getNumberOfDocuments(); document++)
+        {
+            if (!store.contains(document)) continue;
+            double documentNorm = store.getNorm(document);
+            for (int entry = store.getStart(document); entry < store.getEnd(document); entry++)
+            {
+                float weight = store.getWeight(entry);
+                if (weight == 0) continue;
+                int term = store.getTermId(entry);
+                WordPostings wordPostings = termPostings[term];
+                wordPostings.documents[lengths[term]] = document;
+                wordPostings.weights[lengths[term]] = weight / documentNorm;
+                lengths[term]++;
+            }
+        }
+
+        for (WordPostings wordPostings : index.postings.values()) wordPostings.computeMaxWeights();
+        return index;
+    }
+
+    // returns the length (L2 norm) of a vector: the square root of the sum of the squares of its elements.
+    static double norm(Map<String, Double> vector)
+    {
+        double sumSquares = 0;
+        for (double weight : vector.values()) sumSquares += weight * weight;
+        return Math.sqrt(sumSquares);
+    }
+
+    // computes the cosine similarity between the query (word -> tf x idf, whose
+    // length is queryNorm) and every document which has at least one word of the
+    // query, and returns the k most similar documents, sorted.
+    public TopK score(Map<String, Double> queryVector, double queryNorm, int k)
+    {
+        // term at a time: the scalar products are built one word of the query after the other
+        for (Map.Entry<String, Double> word : queryVector.entrySet())
+        {
+            WordPostings wordPostings = postings.get(word.getKey());
+            if (wordPostings == null || word.getValue() == 0) continue;
+            double queryWeight = word.getValue();
+            for (int p = 0; p < wordPostings.documents.length; p++)
+            {
+                int document = wordPostings.documents[p];
+                if (scores[document] == 0) touched[numberOfTouched++] = document;
+                scores[document] += wordPostings.weights[p] * queryWeight;
+            }
+        }
+
+        TopK top = new TopK(k);
+        for (int t = 0; t < numberOfTouched; t++)
+        {
+            int document = touched[t];
+            top.add(document, scores[document] / queryNorm);
+            scores[document] = 0; // ready for the next query
+        }
+        numberOfTouched = 0;
+        return top.sort();
+    }
+
+    // the position of a word of the query in its postings
+    private static class Cursor
+    {
+        final WordPostings postings;
+        final double queryWeight;
+        final double maxScore; // the most this word can add to the scalar product of a document
+        int index = 0;
+        int block = 0; // the block of the last document whose maximum score was asked for
+        int document;
+
+        Cursor(WordPostings postings, double queryWeight)
+        {
+            this.postings = postings;
+            this.queryWeight = queryWeight;
+            this.maxScore = postings.maxWeight * queryWeight;
+            this.document = postings.documents[0];
+        }
+
+        // moves to the first document >= target
+        void advance(int target)
+        {
+            index = Intersection.gallop(postings.documents, index, target);
+            document = (index < postings.documents.length) ? postings.documents[index] : Integer.MAX_VALUE;
+        }
+
+        // moves to the block which would contain the target (without looking at its documents) and returns its maximum score
+        double blockMaxScore(int target)
+        {
+            block = Intersection.gallop(postings.blockLastDocuments, block, target);
+            return (block < postings.blockLastDocuments.length) ? postings.blockMaxWeights[block] * queryWeight : 0;
+        }
+
+        // the last document of the block found by blockMaxScore
+        int blockLastDocument()
+        {
+            return (block < postings.blockLastDocuments.length) ? postings.blockLastDocuments[block] : Integer.MAX_VALUE;
+        }
+    }
+
+    // a lower bound of the k-th largest weight of the word (0 if it is in less than k documents): the k-th largest
+    // maximum weight of its blocks, which belong to k different documents, or the k-th largest weight when the word
+    // has less than k blocks
+    private static double kthLargestWeight(WordPostings wordPostings, int k)
+    {
+        double[] weights = (wordPostings.blockMaxWeights.length >= k) ? wordPostings.blockMaxWeights : wordPostings.weights;
+        if (weights.length < k) return 0;
+        TopK largest = new TopK(k);
+        for (int i = 0; i < weights.length; i++) largest.add(i, weights[i]);
+        return largest.minScore();
+    }
+
+    // returns the k documents with the highest cosine similarity to the query,
+    // sorted: the same documents and similarities as score, but the
+    // documents which cannot be among them are not scored.
+    public TopK topK(Map<String, Double> queryVector, double queryNorm, int k)
+    {
+        TopK top = new TopK(k);
+        if (k == 0) return top.sort();
+
+        // the words of the query, in the order in which score() adds them up (so the sums are the same)
+        Cursor[] terms = new Cursor[queryVector.size()];
+        int numberOfTerms = 0;
+        for (Map.Entry<String, Double> word : queryVector.entrySet())
+        {
+            WordPostings wordPostings = postings.get(word.getKey());
+            if (wordPostings == null || word.getValue() == 0) continue;
+            terms[numberOfTerms++] = new Cursor(wordPostings, word.getValue());
+        }
+        Cursor[] cursors = Arrays.copyOf(terms, numberOfTerms);
+
+        // the documents come in increasing order, so a new one must score more than the worst one of the top k;
+        // the bounds are scalar products, not yet divided by the length of the query. Before any document is
+        // scored, the k-th score is at least the k-th largest weight of any word of the query (k different documents
+        // have it, and a document scores at least the weight of each of its words)
+        double threshold = 0;
+        for (Cursor cursor : cursors) threshold = Math.max(threshold, kthLargestWeight(cursor.postings, k) * cursor.queryWeight);
+        threshold *= 1 - 1e-12; // (the same rounding margin as below)
+
+        // the words whose maximum scores add up to no more than the threshold cannot bring a document into the top k
+        // by themselves: only the postings of the other words (the essential ones) lead to documents. When they are
+        // more than 1 / ESSENTIAL_SHARE of the postings, few documents are skipped, and scoring the postings term at
+        // a time is cheaper than going through them document at a time
+        Cursor[] byMaxScore = cursors.clone();
+        Arrays.sort(byMaxScore, (cursor1, cursor2) -> Double.compare(cursor1.maxScore, cursor2.maxScore));
+        long totalPostings = 0, essentialPostings = 0;
+        double nonEssentialScore = 0;
+        for (Cursor cursor : byMaxScore)
+        {
+            totalPostings += cursor.postings.documents.length;
+            nonEssentialScore += cursor.maxScore;
+            if (nonEssentialScore > threshold) essentialPostings += cursor.postings.documents.length;
+        }
+        if (essentialPostings * ESSENTIAL_SHARE > totalPostings) return score(queryVector, queryNorm, k);
+
+        while (true)
+        {
+            // only the cursors which moved are out of order: insertion sort by document
+            for (int c = 1; c < cursors.length; c++)
+            {
+                Cursor cursor = cursors[c];
+                int d = c - 1;
+                while (d >= 0 && cursors[d].document > cursor.document)
+                {
+                    cursors[d + 1] = cursors[d];
+                    d--;
+                }
+                cursors[d + 1] = cursor;
+            }
+
+            // the pivot: the first document at which the words reached so far could exceed the threshold
+            double upperBound = 0;
+            int pivot = -1;
+            for (int c = 0; c < cursors.length && cursors[c].document != Integer.MAX_VALUE; c++)
+            {
+                upperBound += cursors[c].maxScore;
+                if (upperBound > threshold)
+                {
+                    pivot = c;
+                    break;
+                }
+            }
+            if (pivot < 0) break; // no remaining document can enter the top k
+            int pivotDocument = cursors[pivot].document;
+            while (pivot + 1 < cursors.length && cursors[pivot + 1].document == pivotDocument) pivot++;
+
+            // a tighter bound, from the maximum scores of the blocks which contain the pivot document
+            double blockUpperBound = 0;
+            for (int c = 0; c <= pivot; c++) blockUpperBound += cursors[c].blockMaxScore(pivotDocument);
+
+            if (blockUpperBound > threshold)
+            {
+                if (cursors[0].document == pivotDocument)
+                {
+                    // all the words up to the pivot are on this document: it is scored
+                    double score = 0;
+                    for (int t = 0; t < numberOfTerms; t++)
+                    {
+                        Cursor term = terms[t];
+                        if (term.document == pivotDocument) score += term.postings.weights[term.index] * term.queryWeight;
+                    }
+                    top.add(pivotDocument, score / queryNorm);
+                    // (lowered by a rounding margin, so that the division by the length of the query never skips a document)
+                    if (top.isFull()) threshold = Math.max(threshold, top.minScore() * queryNorm * (1 - 1e-12));
+                    for (int c = 0; c <= pivot; c++) cursors[c].advance(pivotDocument + 1);
+                }
+                else
+                {
+                    // the words before the pivot catch up with it: no document before it can exceed the threshold
+                    for (int c = 0; c < pivot && cursors[c].document < pivotDocument; c++) cursors[c].advance(pivotDocument);
+                }
+            }
+            else
+            {
+                // no document can enter the top k before the end of one of these blocks, or the document of the next word
+                int next = (pivot + 1 < cursors.length) ? cursors[pivot + 1].document : Integer.MAX_VALUE;
+                for (int c = 0; c <= pivot; c++)
+                {
+                    int blockLast = cursors[c].blockLastDocument();
+                    next = Math.min(next, blockLast == Integer.MAX_VALUE ? blockLast : blockLast + 1);
+                }
+                for (int c = 0; c <= pivot && cursors[c].document < next; c++) cursors[c].advance(next);
+            }
+        }
+
+        return top.sort();
+    }
+}
@@ -2,87 +2,384 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 
 import java.io.*;
 import java.lang.reflect.Type;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 
 public class VectorSearch {
-    private static HashMap<String, TreeMap<String, Double>> associatedVectorsCollection = null;
+    private static HashMap<Integer, TreeMap<String, Double>> associatedVectorsCollection = null;
     private static boolean associatedVectorsLoaded = false;
+    private static HashMap<Integer, Double> documentNormsCollection = null; // document id -> length (L2 norm) of its vector
+    private static VectorIndex vectorIndex = null; // the postings built from the vectors, for the search
+    private static Object vectorIndexSource = null; // the vectors (maps or vector store) from which it was built
+    private static VectorStore vectorStore = null; // the vectors in columns, mapped from documentVectors.bin
+    private static HashMap<String, Double> idfCollection = null; // word -> idf, read once from idf.json
+    private static long idfLastModified = 0; // the time of the idf.json file that was read
+
+    // the tolerance of the incremental creation of the vectors: a document keeps its vector as long as the idf of
+    // each of its words did not move by more than this from the idf with which the vector was computed
+    public static double idfTolerance = 0.01;
+
+    // the progress of the last creation of the vectors (documents/second, estimated time left)
+    public static ProgressMeter lastProgress = null;
+
+    // the number of documents whose vector was reused (not computed again) by the last creation of the vectors
+    public static int lastReusedVectors = 0;
+
+    // what the previous creation of the vectors used: the idf of the words, and for each document (path)
+    // its id at that time and the checksum of its tf file
+    private static class VectorState
+    {
+        final HashMap<String, Double> idf = new HashMap<>();
+        final HashMap<String, Integer> ids = new HashMap<>();
+        final HashMap<String, Long> checksums = new HashMap<>();
+
+        static VectorState load(File stateFile) throws IOException
+        {
+            VectorState state = new VectorState();
+            if (!stateFile.exists())
+            {
+                return state;
+            }
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(stateFile)));
+            try {
+                for (int words = input.readInt(); words > 0; --words)
+                {
+                    state.idf.put(input.readUTF(), input.readDouble());
+                }
+                for (int documents = input.readInt(); documents > 0; --documents)
+                {
+                    String document = input.readUTF();
+                    state.ids.put(document, input.readInt());
+                    state.checksums.put(document, input.readLong());
+                }
+            } finally {
+                input.close();
+            }
+            return state;
+        }
+
+        void save(File stateFile) throws IOException
+        {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(stateFile)));
+            output.writeInt(idf.size());
+            for (Map.Entry<String, Double> word : idf.entrySet())
+            {
+                output.writeUTF(word.getKey());
+                output.writeDouble(word.getValue());
+            }
+            output.writeInt(ids.size());
+            for (Map.Entry<String, Integer> document : ids.entrySet())
+            {
+                output.writeUTF(document.getKey());
+                output.writeInt(document.getValue());
+                output.writeLong(checksums.get(document.getKey()));
+            }
+            output.close();
+        }
+    }
 
-    public static HashMap<String, TreeMap<String, Double>> getAssociatedDocumentVectors(WebsiteInfo websiteInfo) throws IOException
+    public static HashMap<Integer, TreeMap<String, Double>> getAssociatedDocumentVectors(WebsiteInfo websiteInfo) throws IOException
+    {
+        return getAssociatedDocumentVectors(websiteInfo, 1);
+    }
+
+    // creates the vectors of the documents, splitting the documents between the threads of a ForkJoinPool
+    // the vectors are written in the file as soon as they are computed, and a document whose tf did not change and
+    // whose words kept their idf (within idfTolerance) keeps the vector computed by the previous run
+    public static HashMap<Integer, TreeMap<String, Double>> getAssociatedDocumentVectors(WebsiteInfo websiteInfo, int parallelism) throws IOException
     {
-        HashMap<String, TreeMap<String, Double>> documentVectors = new HashMap<>();
         Gson gsonBuilder = new GsonBuilder().setPrettyPrinting().create();
 
         String websiteFolder = websiteInfo.getWebsiteFolder();
 
+        // the vectors are identified by the ids of the documents
+        DocumentTable documentTable = DocumentTable.load(websiteFolder + "documents.table");
+
         // we use the indirect index mapping file to retrieve the entire list of documents
         File indirectIndexMapFile = new File(websiteFolder + "indirectindex.map");
         Type indirectIndexType = new TypeToken<HashMap<String, String>>(){}.getType();
         HashMap<String, String> indirectIndexCollection = gsonBuilder.fromJson(new String(Files.readAllBytes(indirectIndexMapFile.toPath())), indirectIndexType);
+        List<String> documents = new ArrayList<>(new TreeSet<>(indirectIndexCollection.keySet()));
+
+        // what the previous run computed: its vectors can be reused
+        File stateFile = new File(websiteFolder + "documentVectors.state");
+        File documentVectorsFile = new File(websiteFolder + "documentVectors.json");
+        VectorState previousState = VectorState.load(stateFile);
+        HashMap<Integer, TreeMap<String, Double>> previousVectors = (!previousState.ids.isEmpty() && documentVectorsFile.exists())
+                ? readVectors(documentVectorsFile) : new HashMap<>();
+
+        // the idf used for the vectors: the new idf of a word only replaces the previous one if it moved beyond the tolerance,
+        // so that the vectors which are kept and the new ones use the same values
+        VectorState state = new VectorState();
+        for (Map.Entry<String, Double> word : loadIdf(websiteInfo).entrySet())
+        {
+            Double previousIdf = previousState.idf.get(word.getKey());
+            boolean keep = previousIdf != null && Math.abs(previousIdf - word.getValue()) <= idfTolerance;
+            state.idf.put(word.getKey(), keep ? previousIdf : word.getValue());
+        }
 
-        // iterate through all the documents in the collection
-        int numberOfDocuments = indirectIndexCollection.keySet().size();
-        int documentIndex = 0; // for displaying progress
+        ConcurrentHashMap<Integer, TreeMap<String, Double>> documentVectors = new ConcurrentHashMap<>();
+        ConcurrentHashMap<Integer, Double> documentNorms = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, Long> checksums = new ConcurrentHashMap<>();
+        LongAdder reused = new LongAdder();
+        lastProgress = new ProgressMeter("documents", documents.size()).display();
         System.out.println();
-        for (String document : indirectIndexCollection.keySet())
+
+        // the vectors are written one by one, as they are computed
+        JsonWriter vectorsWriter = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(websiteFolder + "documentVectors.json.tmp"), "utf-8")));
+        vectorsWriter.setIndent("  ");
+        vectorsWriter.beginObject();
+
+        VectorTask task = new VectorTask(documents, 0, documents.size(), document -> {
+            int id = documentTable.getId(document);
+            byte[] tfFile = Files.readAllBytes(new File(document + ".tf.json").toPath());
+            CRC32 checksum = new CRC32();
+            checksum.update(tfFile);
+
+            Integer previousId = previousState.ids.get(document);
+            TreeMap<String, Double> vector = (previousId != null && previousState.checksums.get(document) == checksum.getValue())
+                    ? previousVectors.get(previousId) : null;
+            if (vector != null && unchangedIdf(vector, previousState.idf, state.idf))
+            {
+                reused.increment();
+            }
+            else
+            {
+                vector = computeVector(tfFile, state.idf);
+            }
+
+            documentVectors.put(id, vector);
+            documentNorms.put(id, VectorIndex.norm(vector));
+            checksums.put(document, checksum.getValue());
+            synchronized (vectorsWriter)
+            {
+                writeVector(vectorsWriter, id, vector);
+            }
+            lastProgress.increment();
+        });
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(parallelism, 1));
+        try {
+            pool.invoke(task);
+        } catch (UncheckedIOException e) {
+            vectorsWriter.close();
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        lastProgress.finish();
+        lastReusedVectors = reused.intValue();
+
+        vectorsWriter.endObject();
+        vectorsWriter.close();
+        Files.move(new File(websiteFolder + "documentVectors.json.tmp").toPath(), documentVectorsFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        // the lengths of the vectors are stored too, so the search does not need to go through the whole vectors
+        Writer documentNormsWriter = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(websiteFolder + "documentNorms.json"), "utf-8"));
+        documentNormsWriter.write(gsonBuilder.toJson(new TreeMap<>(documentNorms)));
+        documentNormsWriter.close();
+
+        // and in columns, for the searches which do not need the vectors as maps
+        VectorStore.write(websiteFolder + "documentVectors.bin.tmp", documentVectors, documentNorms);
+        Files.move(new File(websiteFolder + "documentVectors.bin.tmp").toPath(), new File(websiteFolder + "documentVectors.bin").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        vectorStore = null;
+
+        // what this run used, for the next one
+        for (String document : documents)
         {
-            ++documentIndex;
-            Crawler.printProgress(Crawler.startTime, numberOfDocuments, documentIndex);
+            state.ids.put(document, documentTable.getId(document));
+            state.checksums.put(document, checksums.get(document));
+        }
+        state.save(stateFile);
 
-            // we retrieve all the existing words in the current document from the local indirect index of that document
-            File indirectIndexFile = new File(indirectIndexCollection.get(document));
-            TreeMap<String, HashMap<String, Integer>> indirectIndex = IndirectIndex.loadIndirectIndex(indirectIndexFile.getAbsolutePath(), false);
+        HashMap<Integer, TreeMap<String, Double>> vectors = new HashMap<>(documentVectors);
+        documentNormsCollection = new HashMap<>(documentNorms);
+        associatedVectorsCollection = vectors; // the vectors in memory are the new ones
+        associatedVectorsLoaded = true;
 
-            // create the vector associated with the current document
-            TreeMap<String, Double> currentDocumentVector = new TreeMap<>();
+        return vectors;
+    }
 
-            for (String word : indirectIndex.keySet())  // for each individual word in the document
+    // true if every word of the vector still has the idf with which the vector was computed
+    private static boolean unchangedIdf(TreeMap<String, Double> vector, HashMap<String, Double> previousIdf, HashMap<String, Double> idf)
+    {
+        for (String word : vector.keySet())
+        {
+            Double previous = previousIdf.get(word);
+            if (previous == null || !previous.equals(idf.get(word)))
             {
-                // take over the tf and the idf
-                double tf = getTf(word, document);
-                double idf = getIdf(word, websiteInfo);
-
-                // in the vector of the current document, we add the entry <word, tf x idf>
-                currentDocumentVector.put(word, tf * idf);
+                return false;
             }
+        }
+        return true;
+    }
 
-            // at the end, we add the document to the vector collection
-            documentVectors.put(document, currentDocumentVector);
+    // the tf file of the document has all the words of the document: it is read in a single pass
+    // which creates the vector associated with the document
+    private static TreeMap<String, Double> computeVector(byte[] tfFile, HashMap<String, Double> idf) throws IOException
+    {
+        TreeMap<String, Double> vector = new TreeMap<>();
+        JsonReader tfReader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(tfFile), "UTF-8"));
+        tfReader.beginObject();
+        while (tfReader.hasNext())  // for each individual word in the document
+        {
+            String word = tfReader.nextName();
+            double tf = tfReader.nextDouble();
+            Double wordIdf = idf.get(word);
+
+            // in the vector of the document, we add the entry <word, tf x idf>
+            vector.put(word, tf * (wordIdf != null ? wordIdf : 0));
         }
+        tfReader.endObject();
+        tfReader.close();
+        return vector;
+    }
 
-        // store the associated vectors in a JSON file
-        Gson documentVectorsGsonBuilder = new GsonBuilder().setPrettyPrinting().create();
-        String documentVectorsFile = documentVectorsGsonBuilder.toJson(documentVectors);
-        Writer documentVectorsWriter = new BufferedWriter(new OutputStreamWriter(
-                new FileOutputStream(websiteFolder + "documentVectors.json"), "utf-8"));
-        documentVectorsWriter.write(documentVectorsFile);
-        documentVectorsWriter.close();
+    private static void writeVector(JsonWriter writer, int document, TreeMap<String, Double> vector) throws IOException
+    {
+        writer.name(Integer.toString(document)).beginObject();
+        for (Map.Entry<String, Double> word : vector.entrySet())
+        {
+            writer.name(word.getKey()).value(word.getValue());
+        }
+        writer.endObject();
+    }
 
-        return documentVectors;
+    // the work done for one document
+    private interface DocumentAction
+    {
+        void process(String document) throws IOException;
+    }
+
+    // task that processes a range of documents, split in halves between the threads
+    private static class VectorTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        private static final int DOCUMENTS_PER_TASK = 16;
+
+        private final List<String> documents;
+        private final int from, to;
+        private final DocumentAction action;
+
+        VectorTask(List<String> documents, int from, int to, DocumentAction action)
+        {
+            this.documents = documents;
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= DOCUMENTS_PER_TASK)
+            {
+                try {
+                    for (int d = from; d < to; ++d)
+                    {
+                        action.process(documents.get(d));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new VectorTask(documents, from, middle, action), new VectorTask(documents, middle, to, action));
+        }
+    }
+
+    // loads the lengths of the vectors of the documents, or computes them if the vectors were created without them
+    private static HashMap<Integer, Double> loadDocumentNorms(WebsiteInfo websiteInfo, HashMap<Integer, TreeMap<String, Double>> associatedVectors) throws IOException
+    {
+        HashMap<Integer, Double> documentNorms = new HashMap<>();
+        File documentNormsFile = new File(websiteInfo.getWebsiteFolder() + "documentNorms.json");
+        if (documentNormsFile.exists())
+        {
+            JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(documentNormsFile), "UTF-8"));
+            reader.beginObject();
+            while (reader.hasNext())
+            {
+                documentNorms.put(Integer.parseInt(reader.nextName()), reader.nextDouble());
+            }
+            reader.endObject();
+            reader.close();
+        }
+        for (Map.Entry<Integer, TreeMap<String, Double>> document : associatedVectors.entrySet())
+        {
+            if (!documentNorms.containsKey(document.getKey()))
+            {
+                documentNorms.put(document.getKey(), VectorIndex.norm(document.getValue()));
+            }
+        }
+        return documentNorms;
     }
 
     // the function that loads the vectors associated with HTML documents into memory
-    public static HashMap<String, TreeMap<String, Double>> loadAssociatedVectors(WebsiteInfo websiteInfo) throws IOException
+    public static HashMap<Integer, TreeMap<String, Double>> loadAssociatedVectors(WebsiteInfo websiteInfo) throws IOException
     {
         if (associatedVectorsLoaded)
         {
             return associatedVectorsCollection;
         }
 
-        HashMap<String, TreeMap<String, Double>> associatedVectors = new HashMap<>();
-        JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(websiteInfo.getWebsiteFolder() + "documentVectors.json"), "UTF-8"));
+        // the binary vector store is read instead of the JSON file when it is up to date (its weights are floats)
+        File documentVectorsFile = new File(websiteInfo.getWebsiteFolder() + "documentVectors.json");
+        File vectorStoreFile = new File(websiteInfo.getWebsiteFolder() + "documentVectors.bin");
+        HashMap<Integer, TreeMap<String, Double>> associatedVectors;
+        if (vectorStoreFile.exists() && vectorStoreFile.lastModified() >= documentVectorsFile.lastModified())
+        {
+            VectorStore store = loadVectorStore(websiteInfo);
+            associatedVectors = store.toMaps();
+            documentNormsCollection = store.getNorms();
+        }
+        else
+        {
+            associatedVectors = readVectors(documentVectorsFile);
+            documentNormsCollection = loadDocumentNorms(websiteInfo, associatedVectors);
+        }
+
+        associatedVectorsLoaded = true;
+        associatedVectorsCollection = associatedVectors;
+        return associatedVectors;
+    }
+
+    // maps the vectors in columns (documentVectors.bin) in memory: the search reads them in place, without
+    // creating a map for each vector
+    public static VectorStore loadVectorStore(WebsiteInfo websiteInfo) throws IOException
+    {
+        if (vectorStore == null)
+        {
+            vectorStore = VectorStore.map(websiteInfo.getWebsiteFolder() + "documentVectors.bin");
+        }
+        return vectorStore;
+    }
+
+    // parses the vectors of the documents (document id -> (word -> tf x idf)) in the JSON format
+    private static HashMap<Integer, TreeMap<String, Double>> readVectors(File documentVectorsFile) throws IOException
+    {
+        HashMap<Integer, TreeMap<String, Double>> associatedVectors = new HashMap<>();
+        JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(documentVectorsFile), "UTF-8"));
 
         // parse the JSON manually, object by object
         reader.beginObject();
         while(reader.hasNext())
         {
-           // read each document here
-            String document = reader.nextName();
+           // read each document (id) here
+            int document = Integer.parseInt(reader.nextName());
 
             TreeMap<String, Double> currentDocumentVector = new TreeMap<>();
 
@@ -97,34 +394,41 @@ public class VectorSearch {
             associatedVectors.put(document, currentDocumentVector);
         }
         reader.endObject();
+        reader.close();
 
-        associatedVectorsLoaded = true;
-        associatedVectorsCollection = associatedVectors;
         return associatedVectors;
     }
 
-    // retrieves the value of the tf for a given word within a document
-    private static double getTf(String word, String document) throws IOException
+    // loads the idf of all the words (word -> idf); the file is read again only if it was rewritten by a new indirect index
+    private static HashMap<String, Double> loadIdf(WebsiteInfo websiteInfo) throws IOException
     {
-        File tfFile = new File(document + ".tf.json");
-        Type tfFileType = new TypeToken<TreeMap<String, Double>>(){}.getType();
-        Gson gsonBuilder = new GsonBuilder().setPrettyPrinting().create();
-        TreeMap<String, Double> tfFileCollection = gsonBuilder.fromJson(new String(Files.readAllBytes(tfFile.toPath())), tfFileType);
-        return tfFileCollection.get(word);
+        File idfFile = new File(websiteInfo.getWebsiteFolder() + "idf.json");
+        if (idfCollection != null && idfFile.lastModified() == idfLastModified)
+        {
+            return idfCollection;
+        }
+
+        HashMap<String, Double> idf = new HashMap<>();
+        long lastModified = idfFile.lastModified();
+        JsonReader reader = new JsonReader(new InputStreamReader(new FileInputStream(idfFile), "UTF-8"));
+        reader.beginObject();
+        while (reader.hasNext())
+        {
+            idf.put(reader.nextName(), reader.nextDouble());
+        }
+        reader.endObject();
+        reader.close();
+
+        idfCollection = idf;
+        idfLastModified = lastModified;
+        return idf;
     }
 
     // get the value of the idf for a given word
     private static double getIdf(String word, WebsiteInfo websiteInfo) throws IOException
     {
-        File idfFile = new File(websiteInfo.getWebsiteFolder() + "idf.json");
-        Type idfFileType = new TypeToken<TreeMap<String, Double>>(){}.getType();
-        Gson gsonBuilder = new GsonBuilder().setPrettyPrinting().create();
-        TreeMap<String, Double> idfFileCollection = gsonBuilder.fromJson(new String(Files.readAllBytes(idfFile.toPath())), idfFileType);
-        if (idfFileCollection.containsKey(word))
-        {
-            return idfFileCollection.get(word);
-        }
-        return 0;
+        Double idf = loadIdf(websiteInfo).get(word);
+        return (idf != null) ? idf : 0;
     }
 
     // calculate the tf for the user query
@@ -141,50 +445,62 @@ public class VectorSearch {
         return (double)numberOfApparitions / query.size();
     }
 
-    private static double cosineSimilarity(TreeMap<String, Double> doc, TreeMap<String, Double> queryDoc)
+    // the postings (word -> documents and weights) of the given vectors, built once for each set of vectors
+    private static VectorIndex getVectorIndex(WebsiteInfo websiteInfo, HashMap<Integer, TreeMap<String, Double>> documentVectors) throws IOException
     {
-        double dotProduct = 0; 
-        double sumSquaresD1 = 0; 
-        double sumSquaresD2 = 0;
-        double tfIdf1; // tf x idf
-        double tfIdf2;
-
-        boolean atLeastOneWordInCommon = false;
-        for(String word : queryDoc.keySet())
+        if (vectorIndex == null || vectorIndexSource != documentVectors)
         {
-            if (doc.containsKey(word)) // we make the scalar products only for the elements that exist in both documents
+            if (documentNormsCollection == null)
             {
-                atLeastOneWordInCommon = true;
-                tfIdf1 = doc.get(word);
-                tfIdf2 = queryDoc.get(word);
-                dotProduct += Math.abs(tfIdf1 * tfIdf2);
-                sumSquaresD1 += tfIdf1 * tfIdf1;
-                sumSquaresD2 += tfIdf2 * tfIdf2;
+                documentNormsCollection = loadDocumentNorms(websiteInfo, documentVectors);
             }
+            vectorIndex = VectorIndex.build(documentVectors, documentNormsCollection);
+            vectorIndexSource = documentVectors;
         }
+        return vectorIndex;
+    }
 
-        if (!atLeastOneWordInCommon || dotProduct == 0)
+    // the postings built from the columns of a vector store
+    private static VectorIndex getVectorIndex(VectorStore store)
+    {
+        if (vectorIndex == null || vectorIndexSource != store)
         {
-            return 0;
+            vectorIndex = VectorIndex.build(store);
+            vectorIndexSource = store;
         }
-        return Math.abs(dotProduct) / (Math.sqrt(sumSquaresD1) * Math.sqrt(sumSquaresD2));
+        return vectorIndex;
     }
 
-    // for sorting the results
-    static <K,V extends Comparable<? super V>> SortedSet<Map.Entry<K,V>> entriesSortedByValues(Map<K,V> map) {
-        SortedSet<Map.Entry<K,V>> sortedEntries = new TreeSet<Map.Entry<K,V>>(
-                new Comparator<Map.Entry<K,V>>() {
-                    @Override public int compare(Map.Entry<K,V> e1, Map.Entry<K,V> e2) {
-                        int res = e2.getValue().compareTo(e1.getValue());
-                        return res != 0 ? res : 1;
-                    }
-                }
-        );
-        sortedEntries.addAll(map.entrySet());
-        return sortedEntries;
+    // the search returns all the documents with at least one word of the query, from the most similar one
+    public static TopK Search(String query, WebsiteInfo websiteInfo, HashMap<Integer, TreeMap<String, Double>> documentVectors) throws IOException
+    {
+        return Search(query, websiteInfo, documentVectors, Integer.MAX_VALUE);
+    }
+
+    // the same search, but only the k most similar documents are returned: the documents which cannot be
+    // among them are skipped by the index (Block-Max WAND) without computing their similarity
+    public static TopK Search(String query, WebsiteInfo websiteInfo, HashMap<Integer, TreeMap<String, Double>> documentVectors, int k) throws IOException
+    {
+        return Search(queryVector(query, websiteInfo), getVectorIndex(websiteInfo, documentVectors), k);
+    }
+
+    // the same search, on the vectors of a vector store
+    public static TopK Search(String query, WebsiteInfo websiteInfo, VectorStore store, int k) throws IOException
+    {
+        return Search(queryVector(query, websiteInfo), getVectorIndex(store), k);
+    }
+
+    private static TopK Search(TreeMap<String, Double> queryVector, VectorIndex index, int k)
+    {
+        // calculate the cosine similarities from the postings of the words of the query: only the documents in which
+        // there is at least one word of the user are touched, and they come sorted in descending order of cosine
+        // similarity (for the same similarity, by id)
+        return (k == Integer.MAX_VALUE) ? index.score(queryVector, VectorIndex.norm(queryVector), k)
+                : index.topK(queryVector, VectorIndex.norm(queryVector), k);
     }
 
-    public static SortedSet<HashMap.Entry<String, Double>> Search(String query, WebsiteInfo websiteInfo, HashMap<String, TreeMap<String, Double>> documentVectors) throws IOException
+    // the vector (word -> tf x idf) of the query
+    private static TreeMap<String, Double> queryVector(String query, WebsiteInfo websiteInfo) throws IOException
     {
         // divide the query into words, by spaces
         String[] splitQuery = query.split("\\s+");
@@ -197,13 +513,13 @@ public class VectorSearch {
             String word = splitQuery[i];
 
             // first, we check if it is an exception
-            if (ExceptionList.exceptions.contains(word))
+            if (ExceptionList.filter.contains(word))
             {
                 // we add it as it is
                 queryWords.add(word); ++i;
             }
             // then if it is a stopword
-            else if (StopWordList.stopwords.contains(word))
+            else if (StopWordList.filter.contains(word))
             {
                 // ignore the word everything
                 ++i;
@@ -211,10 +527,7 @@ public class VectorSearch {
             else // dictionary word
             {
                 // the Porter algorithm is used for stemming
-                PorterStemmer stemmer = new PorterStemmer();
-                stemmer.add(word.toCharArray(), word.length());
-                stemmer.stem();
-                word = stemmer.toString();
+                word = StemCache.shared.stem(word);
 
                 queryWords.add(word); ++i;
             }
@@ -226,21 +539,6 @@ public class VectorSearch {
         {
             queryVector.put(word, getTfQuery(word, queryWords) * getIdf(word, websiteInfo));
         }
-
-        // calculate cosine similarities for all existing documents
-        HashMap<String, Double> similarities = new HashMap<>();
-        for (String document: documentVectors.keySet())
-        {
-            // calculate the cosine similarity between the current document and the user's query
-            double similarity = cosineSimilarity(documentVectors.get(document), queryVector);
-            if (similarity != 0)
-            {
-                // we take into account only the documents in which there is at least one word of the user
-                similarities.put(document, similarity);
-            }
-        }
-
-        // we sort the documents in descending order by of cosine similarity
-        return entriesSortedByValues(similarities);
+        return queryVector;
     }
 }
@@ -0,0 +1,152 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+// compares the two ways of finding the k documents most similar to a query in a
+// VectorIndex: scoring every document which has a word of the query (score, the
+// exhaustive search) and Block-Max WAND (topK), which skips the documents that
+// cannot enter the top k. The index is built from generated documents whose
+// words follow Zipf's law, weighted by tf x idf; the queries mix frequent and
+// rare words. Both give the same documents and similarities (checked); the time
+// of a query is the best of several rounds, for k = 10 and k = 100.
+// Usage: VectorSearchBenchmark [documents] [words per document] [rounds]
+class VectorSearchBenchmark {
+    private static final int VOCABULARY = 20000;
+
+    // the queries, as the ranks of their words (0 = the most frequent word)
+    private static final int[][] QUERIES = {
+            { 0, 1 },
+            { 0, 500 },
+            { 3, 40, 2000 },
+            { 10, 100, 1000, 10000 },
+            { 1, 2, 5, 8, 13, 21 },
+            { 200, 3000, 15000 },
+    };
+
+    private static String word(int rank)
+    {
+        return "w" + rank;
+    }
+
+    // the vectors (document -> (word -> tf x idf)) of the generated documents
+    private static HashMap<Integer, HashMap<String, Double>> generateVectors(int numberOfDocuments, int wordsPerDocument,
+                                                                          HashMap<String, Double> idf)
+    {
+        Random random = new Random(42);
+        double[] cumulative = new double[VOCABULARY];
+        double total = 0;
+        for (int rank = 0; rank < VOCABULARY; ++rank)
+        {
+            total += 1.0 / (rank + 1);
+            cumulative[rank] = total;
+        }
+
+        HashMap<Integer, HashMap<String, Double>> vectors = new HashMap<>();
+        HashMap<String, Integer> documentFrequencies = new HashMap<>();
+        for (int document = 0; document < numberOfDocuments; ++document)
+        {
+            HashMap<String, Double> counts = new HashMap<>();
+            for (int w = 0; w < wordsPerDocument; ++w)
+            {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                String word = word(Math.min((rank >= 0) ? rank : -rank - 1, VOCABULARY - 1));
+                counts.merge(word, 1.0, Double::sum);
+            }
+            for (String word : counts.keySet())
+            {
+                documentFrequencies.merge(word, 1, Integer::sum);
+            }
+            vectors.put(document, counts);
+        }
+
+        for (Map.Entry<String, Integer> word : documentFrequencies.entrySet())
+        {
+            idf.put(word.getKey(), Math.log((double) numberOfDocuments / word.getValue()));
+        }
+        for (HashMap<String, Double> vector : vectors.values())
+        {
+            for (Map.Entry<String, Double> word : vector.entrySet())
+            {
+                word.setValue(word.getValue() / wordsPerDocument * idf.get(word.getKey())); // tf x idf
+            }
+        }
+        return vectors;
+    }
+
+    private static TreeMap<String, Double> queryVector(int[] ranks, HashMap<String, Double> idf)
+    {
+        TreeMap<String, Double> vector = new TreeMap<>();
+        for (int rank : ranks)
+        {
+            vector.put(word(rank), idf.getOrDefault(word(rank), 0.0) / ranks.length);
+        }
+        return vector;
+    }
+
+    private static boolean sameResults(TopK top1, TopK top2)
+    {
+        if (top1.size() != top2.size()) return false;
+        for (int rank = 0; rank < top1.size(); ++rank)
+        {
+            if (top1.getDocument(rank) != top2.getDocument(rank) || Math.abs(top1.getScore(rank) - top2.getScore(rank)) > 1e-12)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private interface Search
+    {
+        TopK run();
+    }
+
+    // the best time of the search, in microseconds
+    private static double bestMicros(Search search, int rounds)
+    {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 2 * rounds; ++round) // the first half warms up
+        {
+            long start = System.nanoTime();
+            search.run();
+            if (round >= rounds) best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e3;
+    }
+
+    public static void main(String[] args)
+    {
+        int numberOfDocuments = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        int wordsPerDocument = (args.length > 1) ? Integer.parseInt(args[1]) : 40;
+        int rounds = (args.length > 2) ? Integer.parseInt(args[2]) : 20;
+
+        HashMap<String, Double> idf = new HashMap<>();
+        VectorIndex index = VectorIndex.build(generateVectors(numberOfDocuments, wordsPerDocument, idf), new HashMap<>());
+        System.out.println(numberOfDocuments + " documents of " + wordsPerDocument + " words, " + idf.size() + " distinct words");
+
+        for (int k : new int[] { 10, 100 })
+        {
+            double totalExhaustive = 0, totalWand = 0;
+            for (int[] ranks : QUERIES)
+            {
+                TreeMap<String, Double> query = queryVector(ranks, idf);
+                double queryNorm = VectorIndex.norm(query);
+                if (!sameResults(index.score(query, queryNorm, k), index.topK(query, queryNorm, k)))
+                {
+                    System.out.println("Different results for " + query.keySet() + ", k = " + k);
+                    System.exit(1);
+                }
+                double exhaustive = bestMicros(() -> index.score(query, queryNorm, k), rounds);
+                double wand = bestMicros(() -> index.topK(query, queryNorm, k), rounds);
+                totalExhaustive += exhaustive;
+                totalWand += wand;
+                System.out.printf("k = %3d  %-40s exhaustive %7.0f us, Block-Max WAND %7.0f us (x%.1f)%n",
+                        k, query.keySet(), exhaustive, wand, exhaustive / wand);
+            }
+            System.out.printf("k = %3d  all the queries: exhaustive %.0f us, Block-Max WAND %.0f us (x%.1f)%n",
+                    k, totalExhaustive, totalWand, totalExhaustive / totalWand);
+        }
+    }
+}
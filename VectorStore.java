@@ -0,0 +1,273 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// the vectors of the documents (word -> tf x idf) in columns: every word gets a
+// term id (its rank in the sorted dictionary), and the vector of a document is
+// a range of a single int column of term ids (increasing, so in the order of
+// the words) and of a parallel float column of weights. A vector costs 8 bytes
+// per word instead of a tree node, a boxed Double and a reference to the word.
+// Layout of the file:
+// <pre>
+// header:      int MAGIC, int VERSION, int number of documents, int number of terms, int number of entries
+// starts:      int first entry of each document, then the number of entries (document d = entries [start d, start d+1))
+// norms:       double length (L2 norm) of the vector of each document, -1 for an id without a vector
+// term ids:    int term id of each entry
+// weights:     float weight (tf x idf) of each entry
+// dictionary:  UTF word of each term id, in sorted order
+// </pre>
+// When the file is memory mapped (map), the columns are read in place
+// and only the dictionary is decoded.
+class VectorStore {
+    static final int MAGIC = 0x57435653; // "WCVS"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 5 * 4;
+
+    private final int numberOfDocuments;
+    private final int numberOfEntries;
+    private final IntBuffer starts;
+    private final ByteBuffer norms;
+    private final IntBuffer termIds;
+    private final FloatBuffer weights;
+    private final String[] words;
+    private HashMap<String, Integer> wordIds = null; // built the first time a word is looked up
+
+    private VectorStore(ByteBuffer buffer) throws IOException
+    {
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+        {
+            throw new IOException("Not a vector store file");
+        }
+        if (buffer.getInt(4) != VERSION)
+        {
+            throw new IOException("Unsupported vector store version " + buffer.getInt(4));
+        }
+        numberOfDocuments = buffer.getInt(8);
+        int numberOfTerms = buffer.getInt(12);
+        numberOfEntries = buffer.getInt(16);
+
+        int position = HEADER_SIZE;
+        starts = slice(buffer, position, 4 * (numberOfDocuments + 1)).asIntBuffer();
+        position += 4 * (numberOfDocuments + 1);
+        norms = slice(buffer, position, 8 * numberOfDocuments);
+        position += 8 * numberOfDocuments;
+        termIds = slice(buffer, position, 4 * numberOfEntries).asIntBuffer();
+        position += 4 * numberOfEntries;
+        weights = slice(buffer, position, 4 * numberOfEntries).asFloatBuffer();
+        position += 4 * numberOfEntries;
+
+        byte[] dictionary = new byte[buffer.limit() - position];
+        ByteBuffer dictionaryBuffer = buffer.duplicate();
+        dictionaryBuffer.position(position);
+        dictionaryBuffer.get(dictionary);
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(dictionary));
+        words = new String[numberOfTerms];
+        for (int t = 0; t < numberOfTerms; t++) words[t] = input.readUTF();
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int position, int length)
+    {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(position);
+        slice.limit(position + length);
+        return slice.slice();
+    }
+
+    // writes the vectors of the documents (document id -> (word -> tf x idf)) and
+    // their lengths; a length missing from norms is computed from the vector.
+    public static void write(String fileName, Map<Integer, ? extends Map<String, Double>> vectors, Map<Integer, Double> norms) throws IOException
+    {
+        // the dictionary: the term id of a word is its rank
+        TreeSet<String> sortedWords = new TreeSet<>();
+        int numberOfDocuments = 0;
+        long numberOfEntries = 0;
+        for (Map.Entry<Integer, ? extends Map<String, Double>> vector : vectors.entrySet())
+        {
+            sortedWords.addAll(vector.getValue().keySet());
+            numberOfDocuments = Math.max(numberOfDocuments, vector.getKey() + 1);
+            numberOfEntries += vector.getValue().size();
+        }
+        if (numberOfEntries > (Integer.MAX_VALUE - HEADER_SIZE) / 8)
+        {
+            throw new IOException("Too many words in the vectors for a vector store: " + numberOfEntries);
+        }
+        HashMap<String, Integer> ids = new HashMap<>();
+        for (String word : sortedWords) ids.put(word, ids.size());
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeInt(numberOfDocuments);
+            output.writeInt(sortedWords.size());
+            output.writeInt((int) numberOfEntries);
+
+            // the vectors of the documents, in increasing order of the ids; in each vector, the words in sorted order
+            TreeMap<String, Double>[] sortedVectors = sortedVectors(vectors, numberOfDocuments);
+            int start = 0;
+            for (TreeMap<String, Double> vector : sortedVectors)
+            {
+                output.writeInt(start);
+                if (vector != null) start += vector.size();
+            }
+            output.writeInt(start);
+            for (int document = 0; document < numberOfDocuments; document++)
+            {
+                TreeMap<String, Double> vector = sortedVectors[document];
+                Double norm = norms.get(document);
+                output.writeDouble(vector == null ? -1 : (norm != null) ? norm : VectorIndex.norm(vector));
+            }
+            for (TreeMap<String, Double> vector : sortedVectors)
+            {
+                if (vector == null) continue;
+                for (String word : vector.keySet()) output.writeInt(ids.get(word));
+            }
+            for (TreeMap<String, Double> vector : sortedVectors)
+            {
+                if (vector == null) continue;
+                for (double weight : vector.values()) output.writeFloat((float) weight);
+            }
+            for (String word : sortedWords) output.writeUTF(word);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // an array of a generic type
+    private static TreeMap<String, Double>[] sortedVectors(Map<Integer, ? extends Map<String, Double>> vectors, int numberOfDocuments)
+    {
+        TreeMap<String, Double>[] sortedVectors = new TreeMap[numberOfDocuments];
+        for (Map.Entry<Integer, ? extends Map<String, Double>> vector : vectors.entrySet())
+        {
+            sortedVectors[vector.getKey()] = (vector.getValue() instanceof TreeMap)
+                    ? (TreeMap<String, Double>) vector.getValue() : new TreeMap<>(vector.getValue());
+        }
+        return sortedVectors;
+    }
+
+    // reads the whole file in memory.
+    public static VectorStore open(String fileName) throws IOException
+    {
+        return new VectorStore(ByteBuffer.wrap(Files.readAllBytes(Paths.get(fileName))));
+    }
+
+    // maps the file in memory (read only), without reading the columns.
+    public static VectorStore map(String fileName) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException("The vector store is too large to be mapped: " + fileName);
+            }
+            return new VectorStore(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // returns 1 + the highest document id.
+    public int getNumberOfDocuments()
+    {
+        return numberOfDocuments;
+    }
+
+    public int getNumberOfTerms()
+    {
+        return words.length;
+    }
+
+    public int getNumberOfEntries()
+    {
+        return numberOfEntries;
+    }
+
+    // returns true if the document has a vector (the ids between 0 and the highest one may have none).
+    public boolean contains(int document)
+    {
+        return getNorm(document) >= 0;
+    }
+
+    // returns the length (L2 norm) of the vector of the document.
+    public double getNorm(int document)
+    {
+        return norms.getDouble(8 * document);
+    }
+
+    // returns the first entry of the vector of the document.
+    public int getStart(int document)
+    {
+        return starts.get(document);
+    }
+
+    // returns the entry after the last one of the vector of the document.
+    public int getEnd(int document)
+    {
+        return starts.get(document + 1);
+    }
+
+    public int getTermId(int entry)
+    {
+        return termIds.get(entry);
+    }
+
+    public float getWeight(int entry)
+    {
+        return weights.get(entry);
+    }
+
+    public String getWord(int termId)
+    {
+        return words[termId];
+    }
+
+    // returns the term id of a word, or -1 if no document contains it.
+    public synchronized int getTermId(String word)
+    {
+        if (wordIds == null)
+        {
+            wordIds = new HashMap<>(words.length * 2);
+            for (int t = 0; t < words.length; t++) wordIds.put(words[t], t);
+        }
+        Integer id = wordIds.get(word);
+        return (id != null) ? id : -1;
+    }
+
+    // returns the vector of the document as a map (word -> tf x idf), or null if it has none.
+    public TreeMap<String, Double> getVector(int document)
+    {
+        if (!contains(document)) return null;
+        TreeMap<String, Double> vector = new TreeMap<>();
+        for (int entry = getStart(document); entry < getEnd(document); entry++)
+        {
+            vector.put(words[getTermId(entry)], (double) getWeight(entry));
+        }
+        return vector;
+    }
+
+    // returns all the vectors as maps (document id -> (word -> tf x idf)).
+    public HashMap<Integer, TreeMap<String, Double>> toMaps()
+    {
+        HashMap<Integer, TreeMap<String, Double>> vectors = new HashMap<>();
+        for (int document = 0; document < numberOfDocuments; document++)
+        {
+            TreeMap<String, Double> vector = getVector(document);
+            if (vector != null) vectors.put(document, vector);
+        }
+        return vectors;
+    }
+
+    // returns the lengths of all the vectors (document id -> L2 norm).
+    public HashMap<Integer, Double> getNorms()
+    {
+        HashMap<Integer, Double> documentNorms = new HashMap<>();
+        for (int document = 0; document < numberOfDocuments; document++)
+        {
+            if (contains(document)) documentNorms.put(document, getNorm(document));
+        }
+        return documentNorms;
+    }
+}
@@ -2,18 +2,24 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.HashSet;
 import java.util.Set;
 
 public class WebsiteInfo {
+    private static final UrlNormalizer urlNormalizer = new UrlNormalizer(); // shared by the threads of the crawler
+
     private String websiteFolder;
     private String baseUri;
+    private String canonicalBaseUri; // the base URI in the canonical form of the links
 
     WebsiteInfo(String websiteFolder, String baseUri)
     {
         this.websiteFolder = websiteFolder;
         this.baseUri = baseUri;
+        String canonical = urlNormalizer.normalize(baseUri);
+        this.canonicalBaseUri = (canonical != null) ? canonical : baseUri;
     }
 
     public String getWebsiteFolder()
@@ -26,6 +32,28 @@ public class WebsiteInfo {
         return baseUri;
     }
 
+    public String getCanonicalBaseUri()
+    {
+        return canonicalBaseUri;
+    }
+
+    public static UrlNormalizer getUrlNormalizer()
+    {
+        return urlNormalizer;
+    }
+
+    public String getDocumentUrl(String path) // get the URL of a document of the local copy of the website
+    {
+        String folder = new File(websiteFolder).getAbsolutePath();
+        String relativePath = path.startsWith(folder) ? path.substring(folder.length()) : path;
+        relativePath = relativePath.replace(File.separatorChar, '/');
+        while (relativePath.startsWith("/"))
+        {
+            relativePath = relativePath.substring(1);
+        }
+        return baseUri.endsWith("/") ? baseUri + relativePath : baseUri + "/" + relativePath;
+    }
+
     public String getTitle(Document doc) // get the title of the document
     {
         String title = doc.title();
@@ -64,7 +92,7 @@ public class WebsiteInfo {
         Element robots = doc.selectFirst("meta[name=robots]");
         String robotsString = "";
         if (robots == null) {
-            System.out.println("The tag doesn't exist: <meta name=\"robots\">!");
+            // System.out.println("The tag doesn't exist: <meta name=\"robots\">!");
         } else {
             robotsString = robots.attr("content");
             // System.out.println("The list of robots have been retrieved");
@@ -77,26 +105,29 @@ public class WebsiteInfo {
         Elements links = doc.select("a[href]");
         Set<String> URLs = new HashSet<String>();
         for (Element link : links) {
-            String absoluteLink = link.attr("abs:href"); // we make the relative links absolute
-            if (absoluteLink.contains(baseUri)) // ignore internal links
+            // we make the relative links absolute, then canonical (without the anchor, with the query sorted, ...)
+            String canonicalLink = urlNormalizer.normalize(link.attr("abs:href"));
+            if (canonicalLink == null) // not an http(s) link (mailto:, javascript:, ...)
             {
                 continue;
             }
 
-            // we are looking for possible anchors in the links
-            int anchorPosition = absoluteLink.indexOf('#');
-            if (anchorPosition != -1) // if there is an anchor (#)
-            {
-                // delete the part with the anchor from the link
-                StringBuilder tempLink = new StringBuilder(absoluteLink);
-                tempLink.replace(anchorPosition, tempLink.length() - 1, "");
-                absoluteLink = tempLink.toString();
-            }
-
             // we don't want to add duplicates, so we use a collection of type Set
-            URLs.add(absoluteLink);
+            URLs.add(canonicalLink);
         }
         // System.out.println("The links on the site have been taken!");
         return URLs;
     }
+
+    public Set<String> getInternalLinks(Document doc) throws IOException // get the links to the pages of this website (for the live crawler)
+    {
+        return getInternalLinks(doc, canonicalBaseUri);
+    }
+
+    public Set<String> getInternalLinks(Document doc, String baseUri) throws IOException // the same, under another base URI (a website which moved)
+    {
+        Set<String> URLs = getLinks(doc);
+        URLs.removeIf(link -> !link.startsWith(baseUri)); // only the pages under the base URI
+        return URLs;
+    }
 }